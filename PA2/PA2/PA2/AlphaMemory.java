@@ -0,0 +1,37 @@
+//
+// AlphaMemory
+//
+// This class implements an alpha memory in a Rete network.  Each alpha
+// memory corresponds to a single antecedent pattern, shared by all of the
+// rule antecedents that are variants of it.  It holds every fact, known or
+// derived, that unifies with the pattern, and it passes each newly added
+// fact on to the join nodes that use it.
+//
+
+
+import java.util.*;
+
+
+public class AlphaMemory {
+
+    public Literal pattern;
+    public List<Literal> facts;
+    public List<JoinNode> successors;
+
+    // Constructor for a given pattern ...
+    public AlphaMemory(Literal pattern) {
+	this.pattern = pattern;
+	this.facts = new ArrayList<Literal>();
+	this.successors = new ArrayList<JoinNode>();
+    }
+
+    // activate -- Record the given fact, which is known to match the pattern
+    // of this memory, and pass it on to all of the join nodes that use it.
+    public void activate(Literal fact) {
+	facts.add(fact);
+	for (JoinNode join : successors)
+	    join.rightActivate(fact);
+    }
+
+
+}
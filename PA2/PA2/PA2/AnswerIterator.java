@@ -0,0 +1,357 @@
+//
+// AnswerIterator
+//
+// This class implements a lazy stream of answers to a conjunctive query,
+// produced by SLD resolution with chronological backtracking.  The search
+// is depth-first and left-to-right, trying facts before rules and each in
+// knowledge base order, just like the "ask" methods of BackwardChain.
+// Unlike a single call to "ask", however, every alternative match for
+// every goal is remembered as a choice point on an explicit stack.  When
+// a later goal fails, or when the caller asks for another answer, the
+// most recent choice point is resumed with its next alternative.  Answers
+// are only computed when requested, so a caller may pull as many or as few
+// of them as it needs.  Each answer is a binding list for the whole proof,
+// including bindings for intermediate variables.  All of the bindings made
+// during the search are kept on a single binding list, used as a trail.
+// Each choice point records the extent of the trail when it was created,
+// and bindings made after that are undone before its next alternative is
+// tried, so binding lists are only copied when an answer is returned.
+// Note that the search is still depth-first, so recursive rules can
+// produce an endless search.  A search may be abandoned from another thread
+// by setting its cancellation flag, if it was given one.  A search may also
+// be given a table of results for ground subgoals, which may be shared with
+// other searches.  A ground subgoal found in the table is then treated as a
+// fact, or as having no proof, rather than being proven again, and a ground
+// subgoal not yet in the table is proven once, by a search of its own, and
+// its result recorded.  A search reads a single version of the knowledge
+// base (see KnowledgeBase), so it is not disturbed by facts and rules added
+// or removed while it runs.  By default it opens a snapshot of its own,
+// which is closed when the answers run out, so an iterator that is
+// abandoned before then should be closed (see Answers).  A search may be
+// given a profiler, which is told of each step (see ProofProfiler), and
+// limits on the nesting of rules, the number of steps, and the time taken
+// (see QueryLimits), which stop the search rather than letting it run away.
+// Since the search keeps its state on the heap, a deep search cannot
+// overflow the Java stack, but without limits it can still run forever.
+//
+
+
+import java.util.*;
+
+
+public class AnswerIterator implements Answers {
+
+    // An immutable list of goals, sharing its tail with other lists ...
+    static class Goals {
+	Literal first;
+	Goals rest;
+	ProofProfiler.Node path;   // rule that introduced the first goal
+	int depth;                 // nesting of rules above the first goal
+
+	Goals(Literal first, Goals rest) {
+	    this.first = first;
+	    this.rest = rest;
+	}
+    }
+
+    // A choice point, recording the alternatives left for a single goal ...
+    static class ChoicePoint {
+	Literal goal;
+	Goals rest;
+	int mark;          // extent of the trail when created
+	List<Literal> facts;
+	int nextFact;
+	List<Rule> rules;
+	int nextRule;
+	ProofProfiler.Node path;   // rule that introduced the goal
+	ProofProfiler.Node node;   // goal, when profiling
+	int depth;
+    }
+
+    // The most ground subgoals proven by nested searches at once, to keep
+    // the nesting off the Java stack ...
+    static final int MAX_NESTED_GROUND = 256;
+
+    BackwardChain engine;
+    BindingList trail;
+    Deque<ChoicePoint> stack;
+    BindingList pending;   // next answer, if already computed
+    boolean exhausted;
+    java.util.concurrent.atomic.AtomicBoolean cancelled;
+    Map<String, Boolean> groundMemo;   // whether ground subgoals are proven
+    Set<String> inProgress;            // ground subgoals being proven
+    long snapshot;                     // version of the knowledge base read
+    boolean ownsSnapshot;
+    ProofProfiler profiler;            // null when not profiling
+    QueryLimits limits;                // null when not limited
+    long deadline;
+    public long nodes;                 // search steps taken
+    public boolean depthCut;           // rules were skipped at the limit
+    public QueryStatus stopped;        // the limit reached, if any
+
+    // Constructor for a conjunction of goals under a binding list ...
+    public AnswerIterator(BackwardChain engine, List<Literal> goals,
+			  BindingList bl) {
+	this(engine, goals, bl, engine.kb.openSnapshot(), null, null);
+	this.ownsSnapshot = true;
+	if (exhausted)
+	    release();
+    }
+
+    // Constructor for a conjunction of goals under a binding list, reading
+    // an open snapshot of the knowledge base ...
+    public AnswerIterator(BackwardChain engine, List<Literal> goals,
+			  BindingList bl, long snapshot) {
+	this(engine, goals, bl, snapshot, null, null);
+    }
+
+    // Constructor for a conjunction of goals under a binding list, reading
+    // an open snapshot, with a table of ground subgoals and the set of
+    // those being proven ...
+    public AnswerIterator(BackwardChain engine, List<Literal> goals,
+			  BindingList bl, long snapshot,
+			  Map<String, Boolean> groundMemo,
+			  Set<String> inProgress) {
+	this.engine = engine;
+	this.trail = new BindingList(bl);
+	this.stack = new ArrayDeque<ChoicePoint>();
+	this.pending = null;
+	this.exhausted = false;
+	this.cancelled = null;
+	this.groundMemo = groundMemo;
+	this.inProgress = inProgress;
+	this.snapshot = snapshot;
+	this.ownsSnapshot = false;
+	this.profiler = null;
+	this.limits = null;
+	this.nodes = 0;
+	this.depthCut = false;
+	this.stopped = null;
+	Goals g = prepend(goals, null);
+	if (g == null) {
+	    // An empty conjunction is proven exactly once ...
+	    this.pending = new BindingList(bl);
+	    this.exhausted = true;
+	} else {
+	    push(g);
+	}
+    }
+
+    // hasNext -- Return true if there is another answer, searching for it
+    // if necessary.
+    public boolean hasNext() {
+	if ((pending == null) && !exhausted) {
+	    pending = search();
+	    if (profiler != null)
+		profiler.pause();
+	    if (pending == null) {
+		exhausted = true;
+		release();
+	    }
+	}
+	return (pending != null);
+    }
+
+    // limit -- Place the given limits on the rest of the search, with the
+    // time limit starting now.
+    public void limit(QueryLimits limits) {
+	this.limits = limits;
+	this.deadline = System.nanoTime() + limits.timeoutMillis * 1000000L;
+    }
+
+    // status -- Return the status of a search that has been asked for an
+    // answer, given whether one was found.
+    public QueryStatus status(boolean found) {
+	if (found)
+	    return (QueryStatus.proven);
+	if (stopped != null)
+	    return (stopped);
+	return (depthCut ? QueryStatus.incomplete : QueryStatus.failed);
+    }
+
+    // close -- Abandon the search, releasing its snapshot of the knowledge
+    // base.
+    public void close() {
+	stack.clear();
+	pending = null;
+	exhausted = true;
+	release();
+    }
+
+    // release -- Close the snapshot of the knowledge base, if this search
+    // opened it.
+    void release() {
+	if (ownsSnapshot) {
+	    ownsSnapshot = false;
+	    engine.kb.closeSnapshot(snapshot);
+	}
+    }
+
+    // next -- Return the next answer.
+    public BindingList next() {
+	if (!hasNext())
+	    throw new NoSuchElementException();
+	BindingList answer = pending;
+	pending = null;
+	return (answer);
+    }
+
+    // prepend -- Return the goal list formed by putting the given literals
+    // in front of the given goal list.
+    static Goals prepend(List<Literal> lits, Goals goals) {
+	return (prepend(lits, goals, null, 0));
+    }
+
+    // prepend -- Return the goal list formed by putting the given literals,
+    // introduced by the given rule node at the given depth, in front of the
+    // given goal list.
+    static Goals prepend(List<Literal> lits, Goals goals,
+			 ProofProfiler.Node path, int depth) {
+	for (int i = lits.size() - 1; i >= 0; i--) {
+	    goals = new Goals(lits.get(i), goals);
+	    goals.path = path;
+	    goals.depth = depth;
+	}
+	return (goals);
+    }
+
+    // push -- Create a choice point for the first of the given goals,
+    // under the current bindings.
+    void push(Goals goals) {
+	ChoicePoint cp = new ChoicePoint();
+	cp.goal = goals.first;
+	cp.rest = goals.rest;
+	cp.path = goals.path;
+	cp.depth = goals.depth;
+	cp.mark = trail.mark();
+	if (groundMemo != null) {
+	    Literal instance = cp.goal.subst(trail);
+	    Boolean proven = instance.isGround() ? provenGround(instance) : null;
+	    if (proven != null) {
+		// The subgoal is settled, so it needs no rules ...
+		cp.facts = proven ? Collections.singletonList(instance)
+		    : Collections.<Literal>emptyList();
+		cp.nextFact = 0;
+		cp.rules = Collections.<Rule>emptyList();
+		cp.nextRule = 0;
+		stack.push(cp);
+		return;
+	    }
+	}
+	cp.facts = engine.kb.candidateFacts(cp.goal, trail, snapshot);
+	cp.nextFact = 0;
+	cp.rules = engine.kb.candidateRules(cp.goal, trail, snapshot);
+	cp.nextRule = 0;
+	if ((limits != null) && (limits.maxDepth > 0)
+	    && (cp.depth >= limits.maxDepth) && !cp.rules.isEmpty()) {
+	    // Rules would nest too deeply, so only facts are tried ...
+	    cp.rules = Collections.<Rule>emptyList();
+	    depthCut = true;
+	}
+	stack.push(cp);
+    }
+
+    // provenGround -- Return whether the given ground subgoal can be
+    // proven, using and filling in the table of ground subgoals.  Return
+    // null if the subgoal is already being proven, further up.
+    Boolean provenGround(Literal instance) {
+	String key = instance.variantKey();
+	Boolean proven = groundMemo.get(key);
+	if ((proven != null) || (inProgress.size() >= MAX_NESTED_GROUND)
+	    || !inProgress.add(key))
+	    return (proven);
+	try {
+	    AnswerIterator sub = new AnswerIterator(engine,
+		Collections.singletonList(instance), new BindingList(),
+		snapshot, groundMemo, inProgress);
+	    sub.cancelled = cancelled;
+	    proven = sub.hasNext();
+	    sub.close();
+	} finally {
+	    inProgress.remove(key);
+	}
+	if ((cancelled == null) || !cancelled.get())
+	    groundMemo.put(key, proven);
+	return (proven);
+    }
+
+    // antecedents -- Return the antecedents of the given rule, renamed by
+    // the given frame, in the order in which they should be proven.
+    List<Literal> antecedents(Rule r, Rule.Frame frame) {
+	List<Literal> lits = r.renameAntecedents(frame);
+	if ((engine.orderer != null) && (lits.size() > 1))
+	    lits = engine.orderer.order(lits, trail);
+	return (lits);
+    }
+
+    // overLimit -- Count a search step, and return true if the search has
+    // reached its node limit or its time limit, recording which.
+    boolean overLimit() {
+	nodes++;
+	if ((limits.maxNodes > 0) && (nodes > limits.maxNodes)) {
+	    stopped = QueryStatus.nodeLimit;
+	    return (true);
+	}
+	// The clock is only read now and then ...
+	if ((limits.timeoutMillis > 0) && ((nodes & 0xFF) == 0)
+	    && (System.nanoTime() - deadline > 0)) {
+	    stopped = QueryStatus.timeout;
+	    return (true);
+	}
+	return (false);
+    }
+
+    // search -- Resume the search from the most recent choice point,
+    // returning the next answer or null if there are no more.
+    BindingList search() {
+	while (!stack.isEmpty()) {
+	    if ((cancelled != null) && cancelled.get())
+		return (null);
+	    if ((limits != null) && overLimit())
+		return (null);
+	    ChoicePoint cp = stack.peek();
+	    if (profiler != null) {
+		if (cp.node == null)
+		    cp.node = profiler.goalNode(cp.path, cp.goal);
+		profiler.step(cp.node, stack.size());
+	    }
+	    // Undo the bindings made by the previous alternative ...
+	    trail.undo(cp.mark);
+	    BindingList result;
+	    Goals remaining;
+	    if (cp.nextFact < cp.facts.size()) {
+		// Try the next matching fact ...
+		Literal fact = cp.facts.get(cp.nextFact++);
+		result = engine.unify(cp.goal, fact, trail);
+		remaining = cp.rest;
+		if (profiler != null)
+		    profiler.fact(cp.goal, result != null);
+	    } else if (cp.nextRule < cp.rules.size()) {
+		// Try the next matching rule, only renaming its antecedents
+		// if its consequent unifies with the goal ...
+		Rule r = cp.rules.get(cp.nextRule++);
+		Rule.Frame frame = r.newFrame();
+		result = engine.unify(cp.goal, r.renameConsequent(frame), trail);
+		if (profiler != null)
+		    profiler.rule(r, result != null);
+		remaining = (result == null) ? null
+		    : prepend(antecedents(r, frame), cp.rest,
+			      (profiler == null) ? null
+			      : profiler.ruleNode(cp.node, r), cp.depth + 1);
+	    } else {
+		// No alternatives are left, so backtrack ...
+		stack.pop();
+		continue;
+	    }
+	    if (result == null)
+		continue;
+	    if (remaining == null)
+		// All goals have been satisfied ...
+		return (new BindingList(trail));
+	    push(remaining);
+	}
+	return (null);
+    }
+
+
+}
@@ -0,0 +1,24 @@
+//
+// Answers
+//
+// This interface gives the answers to a query, as a lazy iterator over
+// binding lists, one for each proof found.  A search may hold resources
+// until its answers run out, such as a snapshot of the knowledge base
+// (see KnowledgeBase), which keeps removed facts and rules from being
+// purged.  A caller that stops taking answers before they run out should
+// therefore call "close", most simply by using the answers in a
+// try-with-resources statement.  Closing answers that have run out, or
+// closing them twice, does no harm.
+//
+
+
+import java.util.*;
+
+
+public interface Answers extends Iterator<BindingList>, AutoCloseable {
+
+    // close -- Abandon the search, releasing whatever it holds.
+    public void close();
+
+
+}
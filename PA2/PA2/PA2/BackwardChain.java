@@ -12,18 +12,19 @@
 // examined in the order in which they appear in the knowledge base, searching
 // for a consequent that unifies with the goal. Upon successful unification,
 // a proof is sought for the conjunction of the rule antecedents. If this
-// fails, further rules are considered. Note that this is a strictly
-// depth-first approach, so it is incomplete. Note, also, that there is
-// no backtracking with regard to matches to facts -- the first match is
-// always taken and other potential matches are ignored. This can make
-// the algorithm incomplete in another way. In short, the order in which
-// facts and rules appear in the knowledge base can have a large influence
-// on the behavior of this inference procedure.
+// fails, further rules are considered. When a later goal fails, the search
+// backtracks into the alternative matches for earlier goals, facts as well
+// as rules. Note that this is a strictly depth-first approach, so it is
+// incomplete. In short, the order in which facts and rules appear in the
+// knowledge base can have a large influence on the behavior of this
+// inference procedure.
 //
 // In order to use this inference engine, the knowledge base must be
 // initialized by a call to "initKB". Queries are then submitted using the
 // "ask" method. The "ask" function returns a binding list which includes
-// bindings for intermediate variables.
+// bindings for intermediate variables. All of the proofs of a query can
+// be obtained, lazily, using the "answers" or "answerStream" methods. The
+// search itself is carried out by an AnswerIterator.
 //
 // David Noelle -- Tue Oct  9 18:48:57 PDT 2018
 //
@@ -35,10 +36,24 @@ import java.util.*;
 public class BackwardChain {
 
     public KnowledgeBase kb;
+    public Unifier unifier;
+    public ProofProfiler profiler;     // null when not profiling
+    public JoinOrderer orderer;        // null to keep written order
 
 	// Default constructor ...
 	public BackwardChain() {
 		this.kb = new KnowledgeBase();
+		this.unifier = new Unifier();
+		this.profiler = null;
+		this.orderer = null;
+	}
+
+	// Constructor for reasoning over an existing knowledge base ...
+	public BackwardChain(KnowledgeBase kb) {
+		this.kb = kb;
+		this.unifier = new Unifier();
+		this.profiler = null;
+		this.orderer = null;
 	}
 
 	// initKB -- Initialize the knowledge base by interactively requesting
@@ -48,8 +63,9 @@ public class BackwardChain {
 	}
 
 	// unify -- Return the most general unifier for the two provided literals,
-	// or null if no unification is possible. The returned binding list
-	// should be freshly allocated.
+	// or null if no unification is possible. The given binding list is
+	// extended in place and returned. On failure, it is restored to the
+	// state that it was in on entry.
 	
 	//bl is theta
 	// AIMA
@@ -76,153 +92,54 @@ public class BackwardChain {
 	// 	else return add {var/x} to theta . newBL.addVariableBinding(var,x);
 	
 	public BindingList unify(Literal lit1, Literal lit2, BindingList bl) {
-		// PROVIDE YOUR CODE HERE!
-		// if BindingList b1 is null then return null
-		if(bl == null) {
-			return null;
-		}
-		//if literal x and y is equal to each other then return unify function
-		if (lit1.pred.equals(lit2.pred)) {
-			return unify(lit1.args, lit2.args, bl);
-		}
-		
-		return (null);
+		return (unifier.unify(lit1, lit2, bl));
 	}
 
 	// unify -- Return the most general unifier for the two provided terms,
-	// or null if no unification is possible. The returned binding list
-	// should be freshly allocated.
+	// or null if no unification is possible. The given binding list is
+	// extended in place and returned. On failure, it is restored to the
+	// state that it was in on entry.
 	public BindingList unify(Term t1, Term t2, BindingList bl) {
-
-		// PROVIDE YOUR CODE HERE!
-		//if theta = failure then return null
-		if(bl == null) {
-			return null;
-		}
-		///if x = y then return theta
-		if (t1.equals(t2)) {
-			return bl;
-		}
-		//Types of Variable : Constant/ Variable/ Function
-		//Constant
-		if(t1.c !=null) {
-			if(t2.c!=null) {
-				if(t1.equals(t2)){
-					return bl;
-				}
-			}
-			//if t2 is variable, then it can bind with t1, and constant
-			//if VARIABLE?(y) then return UNIFY-VAR(y, x, theta)
-			else if(t2.v!=null) {
-				return unify(t2, t1, bl);
-			}
-		}
-		//Variable
-		//Using UNIFY-VAR method 
-		if(t1.v!=null) {
-			//temp1: Search this binding list for a value corresponding to the given variable. 
-			//Since Unify function contains (term, term, binding list)
-			//We need to change t1.v to temp1 so it can fit into term variable.
-			Term temp1 = bl.boundValue(t1.v);
-			//VARIABLE?(x)
-			//UNIFY-VAR(x, y, theta)
-			if(temp1 != null) {
-				return unify(t2, temp1, bl);
-			}else if(t2.c != null) {
-				bl.addVariableBinding(t1.v, t2);
-				return bl;
-			}
-			//VARIABLE?(y)
-			// UNIFY-VAR(y, x, theta)
-			if(t2.v!=null) {
-				if(t1.equals(t2)) {
-					return bl;
-				}
-				//temp1: Search this binding list for a value corresponding to the given variable. 
-				//Since Unify function contains (term, term, binding list)
-				//We need to change t2.v to temp2 so it can fit into term variable.
-				Term temp2 = bl.boundValue(t2.v);
-				if(temp2 != null) {
-					return unify(t1, temp2, bl);
-				}else {
-					bl.addVariableBinding(t2.v, t1);
-					return bl;
-				}
-			}
-		}
-		
-		//Function
-		if(t1.f!=null) {
-			if(t2.f!=null) {
-				//constant and a function  can never be unified, other can be unified
-				return null;
-			}else if(t2.v!=null) {
-				//if VARIABLE?(y) then return UNIFY-VAR(y, x, theta)
-				return unify(t2, t1, bl);
-			}else if(t2.f!=null){
-			// if VARIABLE?(x) then return UNIFY-VAR(x, y, theta)
-				return unify(t1.f, t2.f, bl);
-			}
-		}
-		
-		
-		return (null);
+		return (unifier.unify(t1, t2, bl));
 	}
 
 	// unify -- Return the most general unifier for the two provided functions,
-	// or null if no unification is possible. The returned binding list
-	// should be freshly allocated.
+	// or null if no unification is possible. The given binding list is
+	// extended in place and returned. On failure, it is restored to the
+	// state that it was in on entry.
 	public BindingList unify(Function f1, Function f2, BindingList bl) {
-
-		// PROVIDE YOUR CODE HERE!
-		//if bl is null then return null
-		if(bl == null) {
-			return null;
-		}
-		//if two function is equal to each other then return unify function
-		if(f1.func.equals(f2)) {
-			return unify(f1.args, f2.args, bl);
-		}
-		
-		return (null);
+		return (unifier.unify(new Term(f1), new Term(f2), bl));
 	}
 
 	// unify -- Return the most general unifier for the two provided lists of
-	// terms, or null if no unification is possible. The returned binding
-	// list should be freshly allocated.
+	// terms, or null if no unification is possible. The given binding list
+	// is extended in place and returned. On failure, it is restored to the
+	// state that it was in on entry.
 	public BindingList unify(List<Term> ts1, List<Term> ts2, BindingList bl) {
-		if (bl == null)
-			return (null);
-		if ((ts1.size() == 0) && (ts2.size() == 0))
-			// Empty lists match other empty lists ...
-			return (new BindingList(bl));
-		if ((ts1.size() == 0) || (ts2.size() == 0))
-			// Ran out of arguments in one list before reaching the
-			// end of the other list, which means the two argument lists
-			// can't match ...
-			return (null);
-		List<Term> terms1 = new LinkedList<Term>();
-		List<Term> terms2 = new LinkedList<Term>();
-		terms1.addAll(ts1);
-		terms2.addAll(ts2);
-		Term t1 = terms1.get(0);
-		Term t2 = terms2.get(0);
-		terms1.remove(0);
-		terms2.remove(0);
-		return (unify(terms1, terms2, unify(t1, t2, bl)));
+		return (unifier.unify(ts1, ts2, bl));
 	}
 
-	// askFacts -- Examine all of the facts in the knowledge base to
-	// determine if any of them unify with the given literal, under the
-	// given binding list. If a unification is found, return the
-	// corresponding most general unifier. If none is found, return null
-	// to indicate failure.
+	// askFacts -- Examine the facts in the knowledge base that are indexed
+	// as compatible with the given literal to determine if any of them
+	// unify with it, under the given binding list. If a unification is
+	// found, return the corresponding most general unifier, freshly
+	// allocated. If none is found, return null to indicate failure. The
+	// facts are read from a snapshot of the knowledge base.
 	BindingList askFacts(Literal lit, BindingList bl) {
 		BindingList mgu = null; // Most General Unifier
-		for (Literal fact : kb.facts) {
-			mgu = unify(lit, fact, bl);
-			if (mgu != null)
-				return (mgu);
+		BindingList work = new BindingList(bl);
+		long snapshot = kb.openSnapshot();
+		try {
+			for (Literal fact : kb.candidateFacts(lit, bl, snapshot)) {
+				// A failed unification leaves the working list unchanged ...
+				mgu = unify(lit, fact, work);
+				if (profiler != null)
+					profiler.fact(lit, mgu != null);
+				if (mgu != null)
+					return (mgu);
+			}
+		} finally {
+			kb.closeSnapshot(snapshot);
 		}
 		return (null);
 	}
@@ -235,6 +152,84 @@ public class BackwardChain {
 		return (askFacts(lit, new BindingList()));
 	}
 
+	// askBatch -- Try to prove each of the given goal literals, sharing
+	// the work common to several of them (see BatchQuery). Return a list
+	// holding a binding list for each goal, or null for each goal that
+	// could not be proven.
+	public List<BindingList> askBatch(List<Literal> goals) {
+		return (new BatchQuery(this).ask(goals));
+	}
+
+	// answers -- Return a lazy iterator over all of the proofs of the
+	// given list of goal literals, under the constraints of the given
+	// binding list. Each answer is a freshly allocated binding list.
+	// Alternatives are only explored when further answers are requested.
+	// The answers should be closed if they are abandoned before they run
+	// out (see Answers).
+	public Answers answers(List<Literal> goals, BindingList bl) {
+		return (answers(goals, bl, profiler));
+	}
+
+	// answers -- Return a lazy iterator over all of the proofs of the
+	// given list of goal literals, under the constraints of the given
+	// binding list, reporting the search to the given profiler (which
+	// may be null).
+	public Answers answers(List<Literal> goals, BindingList bl,
+			       ProofProfiler profiler) {
+		return (search(goals, bl, profiler));
+	}
+
+	// search -- Return a new search for the proofs of the given list of
+	// goal literals, under the constraints of the given binding list,
+	// with the goals put in order by the orderer, if there is one.
+	AnswerIterator search(List<Literal> goals, BindingList bl,
+			      ProofProfiler profiler) {
+		if (orderer != null)
+			goals = orderer.order(goals, bl);
+		AnswerIterator it = new AnswerIterator(this, goals, bl);
+		it.profiler = profiler;
+		return (it);
+	}
+
+	// answers -- Return a lazy iterator over all of the proofs of the
+	// given goal literal, under the constraints of the given binding list.
+	public Answers answers(Literal goal, BindingList bl) {
+		return (answers(Collections.singletonList(goal), bl));
+	}
+
+	// answers -- Return a lazy iterator over all of the proofs of the
+	// given goal literal.
+	public Answers answers(Literal goal) {
+		return (answers(goal, new BindingList()));
+	}
+
+	// answerStream -- Return a lazy, sequential stream of all of the
+	// proofs of the given goal literal, in the order that they are found.
+	// Closing the stream closes the search, so a stream that may be
+	// abandoned, as by "findFirst", should be used in a try-with-resources
+	// statement.
+	public java.util.stream.Stream<BindingList> answerStream(Literal goal) {
+		final Answers it = answers(goal);
+		Spliterator<BindingList> answerSpliterator
+			= Spliterators.spliteratorUnknownSize(it,
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return (java.util.stream.StreamSupport.stream(answerSpliterator, false)
+			.onClose(new Runnable() {
+				public void run() {
+					it.close();
+				}
+			}));
+	}
+
+	// firstAnswer -- Return the next answer from the given iterator, or
+	// null if there are none.
+	BindingList firstAnswer(Answers it) {
+		BindingList answer = it.hasNext() ? it.next() : null;
+		// The rest of the search is abandoned ...
+		it.close();
+		return (answer);
+	}
+
 	// ask -- Try to prove the given goal literal, under the constraints of
 	// the given binding list, using both the list of known facts and the
 	// collection of known rules. Terminate as soon as a proof is found,
@@ -242,34 +237,7 @@ public class BackwardChain {
 	// no proof can be found. The returned binding list should be freshly
 	// allocated.
 	BindingList ask(Literal goal, BindingList bl) {
-		BindingList result = askFacts(goal, bl);
-		if (result != null) {
-			// The literal can be unified with a known fact ...
-			return (result);
-		}
-		// Need to look at rules ...
-		for (Rule candidateRule : kb.rules) {
-			if (candidateRule.consequent.pred.equals(goal.pred)) {
-				// The rule head uses the same predicate as the goal ...
-				// Standardize apart ...
-				Rule r = candidateRule.standardizeApart();
-				// Check to see if the consequent unifies with the goal ...
-				result = unify(goal, r.consequent, bl);
-				if (result != null) {
-					// This rule might be part of a proof, if we can prove
-					// the rule's antecedents ...
-					result = ask(r.antecedents, result);
-					if (result != null) {
-						// The antecedents have been proven, so the goal
-						// is proven ...
-						return (result);
-					}
-				}
-			}
-		}
-		// No rule that matches has antecedents that can be proven. Thus,
-		// the search fails ...
-		return (null);
+		return (firstAnswer(answers(goal, bl)));
 	}
 
 	// ask -- Try to prove the given goal literal using both the list of
@@ -281,30 +249,37 @@ public class BackwardChain {
 		return (ask(goal, new BindingList()));
 	}
 
+	// ask -- Try to prove the given goal literal, under the constraints of
+	// the given binding list, reporting the proof search to the given
+	// profiler. Return the first proof found, or null if there is none.
+	public BindingList ask(Literal goal, BindingList bl,
+			       ProofProfiler profiler) {
+		return (firstAnswer(answers(Collections.singletonList(goal), bl,
+					    profiler)));
+	}
+
+	// askLimited -- Try to prove the given goal literal, under the
+	// constraints of the given binding list, within the given limits.
+	// Return the outcome, with the first proof found, if any.
+	public QueryResult askLimited(Literal goal, BindingList bl,
+				      QueryLimits limits) {
+		AnswerIterator it = search(Collections.singletonList(goal), bl,
+					   profiler);
+		it.limit(limits);
+		BindingList answer = firstAnswer(it);
+		return (new QueryResult(it.status(answer != null), answer,
+					it.nodes));
+	}
+
 	// ask -- Try to prove the given list of goal literals, under the
 	// constraints of the given binding list, using both the list of known
-	// facts and the collection of known rules. Terminate as soon as a proof
-	// is found, returning the resulting binding list for that proof. Return
-	// null if no proof can be found. The returned binding list should be
-	// freshly allocated.
+	// facts and the collection of known rules. Alternative matches for
+	// earlier goals are revisited when later goals fail. Terminate as soon
+	// as a proof is found, returning the resulting binding list for that
+	// proof. Return null if no proof can be found. The returned binding
+	// list should be freshly allocated.
 	BindingList ask(List<Literal> goals, BindingList bl) {
-		if (goals.size() == 0) {
-			// All goals have been satisfied ...
-			return (bl);
-		} else {
-			List<Literal> newGoals = new LinkedList<Literal>();
-			newGoals.addAll(goals);
-			Literal goal = newGoals.get(0);
-			newGoals.remove(0);
-			BindingList firstBL = ask(goal, bl);
-			if (firstBL == null) {
-				// Failure to prove one of the goals ...
-				return (null);
-			} else {
-				// Try to prove the remaining goals ...
-				return (ask(newGoals, firstBL));
-			}
-		}
+		return (firstAnswer(answers(goals, bl)));
 	}
 
 }
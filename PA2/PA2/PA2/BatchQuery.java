@@ -0,0 +1,156 @@
+//
+// BatchQuery
+//
+// This class implements the answering of many goals at once, as a batch,
+// by a backward chaining engine (see "askBatch" in BackwardChain).  Goals
+// that are variants of each other, identical up to a renaming of
+// variables, are answered only once, and the answer is shared.  The
+// remaining goals are grouped by predicate and by which of their arguments
+// are bound (their adornment, as in MagicSets), so that goals likely to
+// take the same path through the knowledge base are answered together.
+// The groups are cut into chunks that are answered in parallel on a
+// fork/join pool, each chunk sequentially.  All of the searches in a batch
+// share a table recording, for each ground subgoal met during any of the
+// searches, whether or not it can be proven (see AnswerIterator), so that
+// work shared between goals is only done once.  The whole batch reads a single
+// snapshot of the knowledge base, so the table stays valid while the
+// knowledge base changes, and it is discarded at the end of the batch.
+// The result holds one binding list per goal, in the order of the goals,
+// with null for a goal that could not be proven.  The binding list for the
+// first of a set of variant goals holds bindings for intermediate
+// variables, as with "ask", while those for the others only bind the
+// variables of the goal, to a copy of the first answer with its variables
+// renamed apart.  A batch that is interrupted before all of its goals have
+// been answered throws a CancellationException, rather than reporting the
+// unanswered goals as unproven.
+//
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+public class BatchQuery {
+
+    public BackwardChain engine;
+    public ForkJoinPool pool;
+    public int chunkSize;          // most goals answered by a single task
+    public int distinctGoals;      // goals answered in the last batch
+    public int memoEntries;        // ground subgoals settled in the last batch
+
+    // Constructor for a given engine ...
+    public BatchQuery(BackwardChain engine) {
+	this(engine, ForkJoinPool.commonPool());
+    }
+
+    // Constructor for a given engine and pool ...
+    public BatchQuery(BackwardChain engine, ForkJoinPool pool) {
+	this.engine = engine;
+	this.pool = pool;
+	this.chunkSize = 64;
+	this.distinctGoals = 0;
+	this.memoEntries = 0;
+    }
+
+    // ask -- Try to prove each of the given goal literals, returning a list
+    // holding a freshly allocated binding list for each goal, or null for
+    // each goal that could not be proven.
+    public List<BindingList> ask(List<Literal> goals) {
+	// Find the distinct goals, grouped by predicate and adornment ...
+	Map<String, Integer> firstByKey = new HashMap<String, Integer>();
+	int[] representative = new int[goals.size()];
+	Map<String, List<Integer>> byPattern
+	    = new LinkedHashMap<String, List<Integer>>();
+	for (int i = 0; i < goals.size(); i++) {
+	    Literal goal = goals.get(i);
+	    String key = goal.variantKey();
+	    Integer first = firstByKey.get(key);
+	    if (first == null) {
+		first = i;
+		firstByKey.put(key, first);
+		String pattern = goal.pred.name + "/"
+		    + MagicSets.adornment(goal, Collections.<Variable>emptySet());
+		List<Integer> group = byPattern.get(pattern);
+		if (group == null) {
+		    group = new ArrayList<Integer>();
+		    byPattern.put(pattern, group);
+		}
+		group.add(i);
+	    }
+	    representative[i] = first;
+	}
+	distinctGoals = firstByKey.size();
+	// Answer each chunk of each group as a task ...
+	final List<Literal> batch = goals;
+	final BindingList[] answers = new BindingList[goals.size()];
+	final Map<String, Boolean> memo
+	    = new ConcurrentHashMap<String, Boolean>();
+	final long snapshot = engine.kb.openSnapshot();
+	List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+	for (List<Integer> group : byPattern.values()) {
+	    for (int start = 0; start < group.size(); start += chunkSize) {
+		final List<Integer> chunk
+		    = group.subList(start,
+				    Math.min(start + chunkSize, group.size()));
+		tasks.add(new Callable<Void>() {
+			public Void call() {
+			    Set<String> inProgress = new HashSet<String>();
+			    for (int i : chunk)
+				answers[i] = answer(batch.get(i), snapshot,
+						    memo, inProgress);
+			    return (null);
+			}
+		    });
+	    }
+	}
+	try {
+	    for (Future<Void> done : pool.invokeAll(tasks))
+		done.get();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new CancellationException("Batch query interrupted");
+	} catch (ExecutionException e) {
+	    throw new RuntimeException(e.getCause());
+	} finally {
+	    engine.kb.closeSnapshot(snapshot);
+	}
+	memoEntries = memo.size();
+	// Share the answers between variant goals, renaming the instance
+	// proven for the first apart for each of the others ...
+	List<BindingList> result = new ArrayList<BindingList>(goals.size());
+	Map<Integer, Rule> instances = new HashMap<Integer, Rule>();
+	for (int i = 0; i < goals.size(); i++) {
+	    int first = representative[i];
+	    if ((first == i) || (answers[first] == null)) {
+		result.add(answers[first]);
+	    } else {
+		Rule shared = instances.get(first);
+		if (shared == null) {
+		    shared = new Rule();
+		    shared.name = "answer";
+		    shared.consequent = goals.get(first).subst(answers[first]);
+		    instances.put(first, shared);
+		}
+		Literal instance = shared.renameConsequent(shared.newFrame());
+		result.add(engine.unify(goals.get(i), instance,
+					new BindingList()));
+	    }
+	}
+	return (result);
+    }
+
+    // answer -- Return the first proof of the given goal, or null if there
+    // is none, reading the given snapshot of the knowledge base and using
+    // the given table of ground subgoals.
+    BindingList answer(Literal goal, long snapshot, Map<String, Boolean> memo,
+		       Set<String> inProgress) {
+	AnswerIterator it
+	    = new AnswerIterator(engine, Collections.singletonList(goal),
+				 new BindingList(), snapshot, memo, inProgress);
+	BindingList answer = it.hasNext() ? it.next() : null;
+	it.close();
+	return (answer);
+    }
+
+
+}
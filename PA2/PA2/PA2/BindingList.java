@@ -2,15 +2,25 @@
 // BindingList
 //
 // This class implements a logical binding list (or substitution list).  It
-// consists of a simple list of variable/value bindings.  A method is 
+// consists of a simple list of variable/value bindings.  A method is
 // provided for adding bindings, one at a time, and for composing binding
-// lists together.  Most importantly, a method is provided for searching
-// a binding list for the bound value of a given variable, if any.  This
-// search is currently done inefficiently, using a linear search of the list.
-// The search is recursive, returning a value for which there is no
-// subsequent binding, if such exists.  Lastly, a filtering function that
-// extracts only bindings of interest (e.g., those involving variables
-// in a query) is provided.
+// lists together.  Most importantly, methods are provided for looking up
+// the value bound to a given variable, if any, using a hash table from
+// variable identifiers to bindings, so each lookup takes constant time.
+// "boundValue" returns the value bound directly to the variable, and
+// "groundValue" follows chains of variables bound to variables, and applies
+// the bindings of any variables within the value found.  Unification
+// follows chains of bindings itself, iteratively (see Unifier).  A
+// filtering function that extracts only bindings of interest (e.g., those
+// involving variables in a query) is provided.  Lastly, the list of
+// bindings doubles as a "trail":  the current length of the list can be
+// recorded as a mark, and all bindings added after a mark can later be
+// undone.  This allows a single binding list to be extended and restored
+// during a search, rather than copied at every step.  Chains of variables
+// bound to variables can be shortened by "compress", which makes a variable
+// refer directly to the end of its chain in the hash table, without
+// changing the list of bindings.  Shortcuts are themselves recorded on a
+// trail, and are undone along with any bindings they depend upon.
 //
 // David Noelle -- Tue Apr 10 17:08:45 PDT 2007
 //
@@ -23,22 +33,63 @@ import java.util.*;
 public class BindingList {
 
     public List<Binding> pairs;
+    Map<Integer, Binding> index;    // first binding for each variable
+    List<Shortcut> shortcuts;       // trail of compressed chains
+
+    // A shortcut placed in the hash table, with what it replaced ...
+    static class Shortcut {
+	Binding previous;
+	int mark;                    // extent of the bindings when made
+
+	Shortcut(Binding previous, int mark) {
+	    this.previous = previous;
+	    this.mark = mark;
+	}
+    }
 
     // Default constructor ...
     public BindingList() {
 	this.pairs = new ArrayList<Binding>();
+	this.index = new HashMap<Integer, Binding>();
+	this.shortcuts = null;
     }
 
     // Copy constructor ...
     public BindingList(BindingList bl) {
-	this();
-	this.pairs.addAll(bl.pairs);
+	this.pairs = new ArrayList<Binding>(bl.pairs);
+	this.index = new HashMap<Integer, Binding>(bl.index);
+	this.shortcuts = (bl.shortcuts == null) ? null
+	    : new ArrayList<Shortcut>(bl.shortcuts);
     }
 
     // compose -- Add all of the bindings in the given binding list to the
     // end of this binding list.
     public void compose(BindingList bl) {
-	pairs.addAll(bl.pairs);
+	for (Binding b : bl.pairs)
+	    addBinding(b);
+    }
+
+    // mark -- Return a mark recording the current extent of this binding
+    // list, for later use with "undo".
+    public int mark() {
+	return (pairs.size());
+    }
+
+    // undo -- Remove all of the bindings added since the given mark was
+    // recorded.
+    public void undo(int mark) {
+	// Shortcuts made after the mark may pass through bindings that are
+	// about to be removed ...
+	while ((shortcuts != null) && !shortcuts.isEmpty()
+	       && (shortcuts.get(shortcuts.size() - 1).mark > mark)) {
+	    Binding previous = shortcuts.remove(shortcuts.size() - 1).previous;
+	    index.put(previous.var.id, previous);
+	}
+	for (int i = pairs.size() - 1; i >= mark; i--) {
+	    Binding b = pairs.remove(i);
+	    if (index.get(b.var.id) == b)
+		index.remove(b.var.id);
+	}
     }
 
     // boundValue -- Search this binding list for a value corresponding to
@@ -46,13 +97,22 @@ public class BindingList {
     // the variable, rather than seeking an equivalent ground term. Return
     //  null if no such binding is found.
     public Term boundValue(Variable v) {
-	for (Binding b : pairs) {
-	    if (b.var.equals(v)) {
-		Term value = b.val;
-		return (value);
-	    }
-	}
-	return (null);
+	Binding b = index.get(v.id);
+	if (b == null)
+	    return (null);
+	return (b.val);
+    }
+
+    // compress -- Make the given bound variable refer directly to the
+    // given value, which must be the end of its chain of bindings.
+    void compress(Variable v, Term value) {
+	Binding previous = index.get(v.id);
+	if ((previous == null) || (previous.val == value))
+	    return;
+	if (shortcuts == null)
+	    shortcuts = new ArrayList<Shortcut>();
+	shortcuts.add(new Shortcut(previous, pairs.size()));
+	index.put(v.id, new Binding(v, value));
     }
 
     // groundValue -- Search this binding list for a value corresponding
@@ -60,30 +120,30 @@ public class BindingList {
     // appearing within the value, perhaps producing a ground term value
     // for the given variable. Return null if no such binding is found.
     public Term groundValue(Variable v) {
-	for (Binding b : pairs) {
-	    if (b.var.equals(v)) {
-		Term value = b.val;
-		if (b.val.v != null) {
-		    // The value term is another variable ...
-		    value = groundValue(b.val.v);
-		    if (value == null)
-			// This is the best we can do ...
-			value = b.val;
-		}
-		if (b.val.f != null) {
-		    // The value term is a function, which could contain 
-		    // bound variables ...
-		    value = new Term(b.val.f.subst(this));
-		}
-		return (value);
-	    }
+	Binding b = index.get(v.id);
+	if (b == null)
+	    return (null);
+	Term value = b.val;
+	if (b.val.v != null) {
+	    // The value term is another variable ...
+	    value = groundValue(b.val.v);
+	    if (value == null)
+		// This is the best we can do ...
+		value = b.val;
+	}
+	if (b.val.f != null) {
+	    // The value term is a function, which could contain 
+	    // bound variables ...
+	    value = new Term(b.val.f.subst(this));
 	}
-	return (null);
+	return (value);
     }
 
     // addBinding -- Add the given binding to the binding list.
     public void addBinding(Binding b) {
 	pairs.add(b);
+	if (!index.containsKey(b.var.id))
+	    index.put(b.var.id, b);
     }
 
     // addVariableBinding -- Add the given binding to the binding list.
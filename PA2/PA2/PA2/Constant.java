@@ -13,6 +13,16 @@ public class Constant extends Symbol {
     static String gensymPrefix = "CONST-";
     static int gensymCounter = 1;
 
+    // Default constructor ...
+    public Constant() {
+	super();
+    }
+
+    // Constructor with constant name specified ...
+    public Constant(String name) {
+	super(name);
+    }
+
 
 }
 
@@ -0,0 +1,463 @@
+//
+// Datalog
+//
+// This class implements bottom-up evaluation of a knowledge base that
+// contains no function symbols (a Datalog program).  Constants are
+// represented by their interned symbol identifiers, and the facts for each
+// predicate are stored as a Relation of integer tuples.  Each rule is
+// compiled into a head and a list of body atoms whose arguments are either
+// constant identifiers or numbered variable slots.  The predicates defined
+// by rules are grouped into strata (strongly connected components of the
+// predicate dependency graph), which are evaluated in dependency order.
+// Within each stratum, evaluation is semi-naive:  after an initial round
+// that applies every rule to all known tuples, each round only considers
+// rule instances that use at least one tuple derived in the previous
+// round.  Rule bodies are evaluated left to right, as nested loop joins
+// that use a hash index on whichever columns are already bound by
+// constants or by earlier atoms.  Tuples derived in a round are collected
+// separately, and only added to their relations at the end of the round.
+// Facts and rules other than those of the knowledge base, such as a
+// rewritten program (see MagicSets), can also be evaluated.
+//
+
+
+import java.util.*;
+
+
+public class Datalog {
+
+    // A compiled literal:  a relation and a list of arguments.  Each
+    // argument is either a constant identifier (non-negative) or a variable
+    // slot, encoded as -(slot + 1) ...
+    static class Atom {
+	Relation rel;
+	int[] args;
+	// Join plan, given the variables bound by earlier atoms ...
+	int[] keyCols;        // columns with known values
+	int[] keyArgs;        // the arguments giving those values
+	int[] key;            // scratch space for key values
+	int[] newSlots;       // variables first bound by this atom
+	Relation.Index index;
+    }
+
+    // A compiled rule ...
+    static class Clause {
+	Atom head;
+	Atom[] body;
+	int numSlots;
+    }
+
+    public KnowledgeBase kb;
+    public SymbolTable symbols;
+    Map<String, Relation> relations;
+    List<Clause> clauses;
+    Map<Relation, Relation> pending;   // tuples derived in this round
+
+    // Constructor ...
+    public Datalog(KnowledgeBase kb) {
+	this.kb = kb;
+	this.symbols = Symbol.table;
+	this.relations = new HashMap<String, Relation>();
+	this.clauses = new ArrayList<Clause>();
+	this.pending = new HashMap<Relation, Relation>();
+    }
+
+    // isDatalog -- Return true if the given knowledge base contains no
+    // function symbols, has only ground facts, and has only rules in which
+    // every variable in the consequent also appears in an antecedent.
+    public static boolean isDatalog(KnowledgeBase kb) {
+	synchronized (kb) {
+	    return (isDatalog(kb.facts, kb.rules));
+	}
+    }
+
+    // isDatalog -- Return true if the given facts and rules form a Datalog
+    // program, as above.
+    public static boolean isDatalog(List<Literal> facts, List<Rule> rules) {
+	for (Literal fact : facts) {
+	    for (Term arg : fact.args)
+		if (arg.c == null)
+		    return (false);
+	}
+	for (Rule r : rules) {
+	    Set<Variable> bodyVars = new HashSet<Variable>();
+	    for (Literal ante : r.antecedents) {
+		for (Term arg : ante.args) {
+		    if (arg.f != null)
+			return (false);
+		    if (arg.v != null)
+			bodyVars.add(arg.v);
+		}
+	    }
+	    for (Term arg : r.consequent.args) {
+		if (arg.f != null)
+		    return (false);
+		if ((arg.v != null) && !bodyVars.contains(arg.v))
+		    return (false);
+	    }
+	}
+	return (true);
+    }
+
+    // relation -- Return the relation for the given predicate name and
+    // arity, creating it if needed.
+    public Relation relation(String pred, int arity) {
+	String key = String.format("%s/%d", pred, arity);
+	Relation rel = relations.get(key);
+	if (rel == null) {
+	    rel = new Relation(key, arity);
+	    relations.put(key, rel);
+	}
+	return (rel);
+    }
+
+    // relation -- Return the relation for the predicate of the given
+    // literal, creating it if needed.
+    public Relation relation(Literal lit) {
+	return (relation(lit.pred.name, lit.args.size()));
+    }
+
+    // tuple -- Return the tuple of constant identifiers for the given
+    // ground literal.
+    int[] tuple(Literal fact) {
+	int[] t = new int[fact.args.size()];
+	for (int i = 0; i < t.length; i++)
+	    t[i] = fact.args.get(i).c.id;
+	return (t);
+    }
+
+    // compileAtom -- Compile the given literal, numbering its variables
+    // using the given map.
+    Atom compileAtom(Literal lit, Map<Variable, Integer> slots) {
+	Atom a = new Atom();
+	a.rel = relation(lit);
+	a.args = new int[lit.args.size()];
+	for (int i = 0; i < a.args.length; i++) {
+	    Term arg = lit.args.get(i);
+	    if (arg.c != null) {
+		a.args[i] = arg.c.id;
+	    } else {
+		Integer slot = slots.get(arg.v);
+		if (slot == null) {
+		    slot = slots.size();
+		    slots.put(arg.v, slot);
+		}
+		a.args[i] = -(slot + 1);
+	    }
+	}
+	return (a);
+    }
+
+    // plan -- Work out which columns of each body atom will be bound, given
+    // left to right evaluation, and prepare the corresponding indexes.
+    void plan(Clause c) {
+	boolean[] bound = new boolean[c.numSlots];
+	for (Atom a : c.body) {
+	    List<Integer> cols = new ArrayList<Integer>();
+	    for (int i = 0; i < a.args.length; i++) {
+		int arg = a.args[i];
+		if ((arg >= 0) || bound[-arg - 1])
+		    cols.add(i);
+	    }
+	    a.keyCols = new int[cols.size()];
+	    a.keyArgs = new int[cols.size()];
+	    for (int i = 0; i < a.keyCols.length; i++) {
+		a.keyCols[i] = cols.get(i);
+		a.keyArgs[i] = a.args[cols.get(i)];
+	    }
+	    a.key = new int[a.keyCols.length];
+	    a.index = (a.keyCols.length > 0) ? a.rel.index(a.keyCols) : null;
+	    List<Integer> fresh = new ArrayList<Integer>();
+	    for (int arg : a.args) {
+		if ((arg < 0) && !bound[-arg - 1]) {
+		    bound[-arg - 1] = true;
+		    fresh.add(-arg - 1);
+		}
+	    }
+	    a.newSlots = new int[fresh.size()];
+	    for (int i = 0; i < a.newSlots.length; i++)
+		a.newSlots[i] = fresh.get(i);
+	}
+    }
+
+    // load -- Intern the facts and compile the rules of the knowledge base.
+    // Return false if the knowledge base is not a Datalog program.
+    public boolean load() {
+	List<Literal> facts;
+	List<Rule> rules;
+	// Copy a single version of the knowledge base ...
+	synchronized (kb) {
+	    facts = new ArrayList<Literal>(kb.facts);
+	    rules = new ArrayList<Rule>(kb.rules);
+	}
+	return (load(facts, rules));
+    }
+
+    // load -- Intern the given facts and compile the given rules in place
+    // of those of the knowledge base.  Return false if they are not a
+    // Datalog program.
+    public boolean load(List<Literal> facts, List<Rule> rules) {
+	if (!isDatalog(facts, rules))
+	    return (false);
+	relations.clear();
+	clauses.clear();
+	for (Literal fact : facts)
+	    relation(fact).add(tuple(fact));
+	for (Rule r : rules) {
+	    Map<Variable, Integer> slots = new HashMap<Variable, Integer>();
+	    Clause c = new Clause();
+	    c.body = new Atom[r.antecedents.size()];
+	    for (int i = 0; i < c.body.length; i++)
+		c.body[i] = compileAtom(r.antecedents.get(i), slots);
+	    c.head = compileAtom(r.consequent, slots);
+	    c.numSlots = slots.size();
+	    plan(c);
+	    clauses.add(c);
+	}
+	return (true);
+    }
+
+    // strata -- Group the relations defined by rules into strongly connected
+    // components of the dependency graph, listed so that each component
+    // comes after all of the components that it depends upon.
+    List<Set<Relation>> strata() {
+	Map<Relation, List<Relation>> dependsOn = new LinkedHashMap<Relation, List<Relation>>();
+	for (Clause c : clauses) {
+	    if (!dependsOn.containsKey(c.head.rel))
+		dependsOn.put(c.head.rel, new ArrayList<Relation>());
+	    for (Atom a : c.body)
+		dependsOn.get(c.head.rel).add(a.rel);
+	}
+	// Tarjan's algorithm, which emits each component after every
+	// component reachable from it ...
+	List<Set<Relation>> result = new ArrayList<Set<Relation>>();
+	Map<Relation, Integer> number = new HashMap<Relation, Integer>();
+	Map<Relation, Integer> low = new HashMap<Relation, Integer>();
+	Deque<Relation> stack = new ArrayDeque<Relation>();
+	Set<Relation> onStack = new HashSet<Relation>();
+	for (Relation rel : dependsOn.keySet())
+	    if (!number.containsKey(rel))
+		connect(rel, dependsOn, number, low, stack, onStack, result);
+	return (result);
+    }
+
+    // connect -- Visit the given relation in Tarjan's algorithm.
+    void connect(Relation rel, Map<Relation, List<Relation>> dependsOn,
+		 Map<Relation, Integer> number, Map<Relation, Integer> low,
+		 Deque<Relation> stack, Set<Relation> onStack,
+		 List<Set<Relation>> result) {
+	number.put(rel, number.size());
+	low.put(rel, number.get(rel));
+	stack.push(rel);
+	onStack.add(rel);
+	List<Relation> deps = dependsOn.get(rel);
+	if (deps != null) {
+	    for (Relation dep : deps) {
+		if (!number.containsKey(dep)) {
+		    connect(dep, dependsOn, number, low, stack, onStack, result);
+		    low.put(rel, Math.min(low.get(rel), low.get(dep)));
+		} else if (onStack.contains(dep)) {
+		    low.put(rel, Math.min(low.get(rel), number.get(dep)));
+		}
+	    }
+	}
+	if (low.get(rel).equals(number.get(rel))) {
+	    Set<Relation> component = new HashSet<Relation>();
+	    Relation member;
+	    do {
+		member = stack.pop();
+		onStack.remove(member);
+		component.add(member);
+	    } while (member != rel);
+	    result.add(component);
+	}
+    }
+
+    // evaluate -- Compute every fact that follows from the knowledge base,
+    // storing the results in the relations.  Return false if the knowledge
+    // base is not a Datalog program.
+    public boolean evaluate() {
+	List<Literal> facts;
+	List<Rule> rules;
+	// Copy a single version of the knowledge base ...
+	synchronized (kb) {
+	    facts = new ArrayList<Literal>(kb.facts);
+	    rules = new ArrayList<Rule>(kb.rules);
+	}
+	return (evaluate(facts, rules));
+    }
+
+    // evaluate -- Compute every fact that follows from the given facts and
+    // rules, storing the results in the relations.  Return false if they
+    // are not a Datalog program.
+    public boolean evaluate(List<Literal> facts, List<Rule> rules) {
+	if (!load(facts, rules))
+	    return (false);
+	for (Set<Relation> stratum : strata()) {
+	    List<Clause> stratumClauses = new ArrayList<Clause>();
+	    for (Clause c : clauses)
+		if (stratum.contains(c.head.rel))
+		    stratumClauses.add(c);
+	    for (Relation rel : relations.values()) {
+		rel.deltaStart = 0;
+		rel.deltaEnd = rel.size;
+	    }
+	    // Initial round:  apply every rule to all known tuples ...
+	    for (Clause c : stratumClauses)
+		join(c, 0, new int[c.numSlots], -1);
+	    // Later rounds only use the tuples new in the previous round ...
+	    while (endRound()) {
+		for (Clause c : stratumClauses) {
+		    for (int i = 0; i < c.body.length; i++) {
+			Relation rel = c.body[i].rel;
+			if (stratum.contains(rel) && (rel.deltaStart < rel.deltaEnd))
+			    join(c, 0, new int[c.numSlots], i);
+		    }
+		}
+	    }
+	}
+	return (true);
+    }
+
+    // endRound -- Add the tuples derived in this round to their relations,
+    // marking them as the new delta.  Return true if any were new.
+    boolean endRound() {
+	boolean changed = false;
+	for (Relation rel : relations.values())
+	    rel.deltaStart = rel.deltaEnd = rel.size;
+	for (Map.Entry<Relation, Relation> e : pending.entrySet()) {
+	    Relation rel = e.getKey();
+	    Relation derived = e.getValue();
+	    int[] t = new int[rel.arity];
+	    for (int row = 0; row < derived.size; row++) {
+		for (int c = 0; c < rel.arity; c++)
+		    t[c] = derived.get(row, c);
+		rel.add(t);
+	    }
+	    rel.deltaEnd = rel.size;
+	    changed |= (rel.deltaStart < rel.deltaEnd);
+	}
+	pending.clear();
+	return (changed);
+    }
+
+    // join -- Extend the given variable values with every match for the
+    // body atoms of the given clause, starting at the given position, and
+    // record the resulting consequents.  The atom at the given delta
+    // position only matches tuples from the previous round.
+    void join(Clause c, int k, int[] vals, int deltaPos) {
+	if (k == c.body.length) {
+	    emit(c.head, vals);
+	    return;
+	}
+	Atom a = c.body[k];
+	int lo = (k == deltaPos) ? a.rel.deltaStart : 0;
+	int hi = a.rel.deltaEnd;
+	if (a.index == null) {
+	    for (int row = lo; row < hi; row++)
+		tryRow(c, k, vals, deltaPos, row);
+	} else {
+	    for (int i = 0; i < a.keyArgs.length; i++) {
+		int arg = a.keyArgs[i];
+		a.key[i] = (arg >= 0) ? arg : (vals[-arg - 1] - 1);
+	    }
+	    a.index.extend();
+	    for (int row = a.index.first(a.key); row >= 0; row = a.index.next(row)) {
+		if ((row >= lo) && (row < hi) && a.index.matches(row, a.key))
+		    tryRow(c, k, vals, deltaPos, row);
+	    }
+	}
+    }
+
+    // tryRow -- Bind the unbound variables of the given body atom to the
+    // values in the given row, and continue the join if consistent.  Bound
+    // variable values are stored plus one, so that zero means unbound.
+    void tryRow(Clause c, int k, int[] vals, int deltaPos, int row) {
+	Atom a = c.body[k];
+	boolean ok = true;
+	for (int i = 0; ok && (i < a.args.length); i++) {
+	    int arg = a.args[i];
+	    int value = a.rel.get(row, i);
+	    if (arg >= 0) {
+		ok = (arg == value);
+	    } else {
+		int slot = -arg - 1;
+		if (vals[slot] == 0) {
+		    vals[slot] = value + 1;
+		} else {
+		    ok = (vals[slot] == value + 1);
+		}
+	    }
+	}
+	if (ok)
+	    join(c, k + 1, vals, deltaPos);
+	for (int slot : a.newSlots)
+	    vals[slot] = 0;
+    }
+
+    // emit -- Record the instance of the given head atom under the given
+    // variable values, unless it is already known.
+    void emit(Atom head, int[] vals) {
+	int[] t = new int[head.args.length];
+	for (int i = 0; i < t.length; i++) {
+	    int arg = head.args[i];
+	    t[i] = (arg >= 0) ? arg : (vals[-arg - 1] - 1);
+	}
+	if (head.rel.contains(t))
+	    return;
+	Relation derived = pending.get(head.rel);
+	if (derived == null) {
+	    derived = new Relation(head.rel.name, head.rel.arity);
+	    pending.put(head.rel, derived);
+	}
+	derived.add(t);
+    }
+
+    // query -- Return binding lists for all of the tuples that match the
+    // given goal literal, which may contain constants and variables.
+    public List<BindingList> query(Literal goal) {
+	List<BindingList> results = new ArrayList<BindingList>();
+	Relation rel = relations.get(String.format("%s/%d", goal.pred.name,
+						   goal.args.size()));
+	if (rel == null)
+	    return (results);
+	int[] want = new int[goal.args.size()];
+	for (int i = 0; i < want.length; i++) {
+	    Term arg = goal.args.get(i);
+	    if (arg.f != null)
+		return (results);
+	    want[i] = (arg.c != null) ? arg.c.id : -1;
+	}
+	for (int row = 0; row < rel.size; row++) {
+	    BindingList bl = new BindingList();
+	    boolean ok = true;
+	    for (int i = 0; ok && (i < want.length); i++) {
+		int value = rel.get(row, i);
+		Term arg = goal.args.get(i);
+		if (arg.c != null) {
+		    ok = (want[i] == value);
+		} else {
+		    Term bound = bl.boundValue(arg.v);
+		    if (bound == null)
+			bl.addVariableBinding(arg.v,
+					      new Term(new Constant(symbols.name(value))));
+		    else
+			ok = (bound.c.id == value);
+		}
+	    }
+	    if (ok)
+		results.add(bl);
+	}
+	return (results);
+    }
+
+    // tupleCount -- Return the total number of tuples in all relations.
+    public long tupleCount() {
+	long count = 0;
+	for (Relation rel : relations.values())
+	    count += rel.size;
+	return (count);
+    }
+
+
+}
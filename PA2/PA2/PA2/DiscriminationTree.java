@@ -0,0 +1,473 @@
+//
+// DiscriminationTree
+//
+// This class implements a discrimination tree (a trie) index over the
+// structure of literals.  Each stored literal is flattened, in preorder,
+// into a sequence of tokens:  the predicate name and arity, followed by
+// a token for each constant, a token for each function symbol (with its
+// arity), and a wildcard token for each variable.  Tokens are packed into
+// long integers, using the interned identifiers of the symbols.  This
+// sequence is used as a path through the tree, and the indexed value is
+// kept at the end of the path.  Retrieval walks the tree with the flattened
+// query literal.  Unbound query variables skip over entire stored subterms,
+// and stored variables skip over entire query subterms, so the values
+// returned are exactly those whose literals are structurally compatible
+// with the query, ignoring repeated variables.  This makes the tree a sound
+// pre-filter for unification:  any value that could unify with the query is
+// returned.  Values are returned in the order in which they were inserted.
+//
+// The tree may be read by many threads while a single thread changes it
+// (writers must be serialized by the caller).  Each value is stamped with
+// the version at which it was inserted and the version at which it was
+// retired, and a retrieval only returns the values live at the version
+// that it asks for, so a reader sees a consistent snapshot of the tree
+// without ever waiting for a writer.  Child maps are concurrent, and the
+// list of values at a node is replaced rather than changed.  Retired values
+// are kept until "purge" is told that no reader can still see them, and
+// are then removed.  A node left with no values and no children when a
+// value is removed is unlinked from its parent, and so on up the tree, so
+// that a tree whose values come and go does not fill up with dead paths.
+// A reader already holding an unlinked node can still walk below it, and
+// finds only values that are not live at its version.
+//
+
+
+import java.util.*;
+
+
+public class DiscriminationTree<T> {
+
+    // Kinds of tokens, kept in the low bits of each token ...
+    static final long PREDICATE = 0;
+    static final long CONSTANT = 1;
+    static final long FUNCTION = 2;
+    // Token used for variables in stored literals ...
+    static final long WILDCARD = 3;
+    // Marker for unbound variables in flattened queries ...
+    static final long UNBOUND = -1;
+    // Version at which values that are never retired die ...
+    static final long FOREVER = Long.MAX_VALUE;
+
+    // A node in the tree, reached by following a single token.  Most nodes
+    // have a single child, which is kept without a map ...
+    static class Node<T> {
+	int arity = 0;             // number of subterms following the token
+	Node<T> parent = null;
+	long token;                // token followed from the parent
+	long onlyToken;
+	volatile Node<T> onlyChild = null;
+	volatile Map<Long, Node<T>> children = null;
+	volatile List<Entry<T>> entries = null;
+
+	// get -- Return the child for the given token, or null.
+	Node<T> get(long token) {
+	    Map<Long, Node<T>> map = children;
+	    if (map != null)
+		return (map.get(token));
+	    Node<T> only = onlyChild;
+	    if ((only != null) && (onlyToken == token))
+		return (only);
+	    return (null);
+	}
+
+	// put -- Add a child for the given token.  The single child is left
+	// in place when the map is made, for readers that have not yet seen
+	// the map.
+	void put(long token, Node<T> child) {
+	    if ((children == null) && (onlyChild == null)) {
+		onlyToken = token;
+		onlyChild = child;
+		return;
+	    }
+	    if (children == null) {
+		Map<Long, Node<T>> map
+		    = new java.util.concurrent.ConcurrentHashMap<Long, Node<T>>();
+		map.put(onlyToken, onlyChild);
+		map.put(token, child);
+		children = map;
+		return;
+	    }
+	    children.put(token, child);
+	}
+
+	// unlink -- Remove the given child, reached by the given token.
+	void unlink(long token, Node<T> child) {
+	    Map<Long, Node<T>> map = children;
+	    if (onlyChild == child)
+		onlyChild = null;
+	    if (map != null) {
+		map.remove(token, child);
+		if (map.isEmpty() && (onlyChild == null))
+		    children = null;
+	    }
+	}
+
+	// isEmpty -- Return true if this node has no values and no children.
+	boolean isEmpty() {
+	    List<Entry<T>> list = entries;
+	    Map<Long, Node<T>> map = children;
+	    return (((list == null) || list.isEmpty()) && (onlyChild == null)
+		    && ((map == null) || map.isEmpty()));
+	}
+
+	// childList -- Return all of the children.
+	Collection<Node<T>> childList() {
+	    Map<Long, Node<T>> map = children;
+	    if (map != null)
+		return (map.values());
+	    Node<T> only = onlyChild;
+	    if (only != null)
+		return (Collections.singletonList(only));
+	    return (Collections.<Node<T>>emptyList());
+	}
+
+	// add -- Add the given entry to the values at this node.
+	void add(Entry<T> e) {
+	    List<Entry<T>> list = (entries == null) ? new ArrayList<Entry<T>>(1)
+		: new ArrayList<Entry<T>>(entries);
+	    list.add(e);
+	    entries = list;
+	}
+
+	// drop -- Remove the given entry from the values at this node,
+	// returning false if it is not there.
+	boolean drop(Entry<T> e) {
+	    List<Entry<T>> list = entries;
+	    if ((list == null) || !list.contains(e))
+		return (false);
+	    list = new ArrayList<Entry<T>>(list);
+	    list.remove(e);
+	    entries = list.isEmpty() ? null : list;
+	    return (true);
+	}
+    }
+
+    // A stored value, tagged with its insertion sequence number and the
+    // versions between which it is live ...
+    static class Entry<T> {
+	long seq;
+	T value;
+	long born;
+	volatile long died;
+
+	Entry(long seq, T value, long born) {
+	    this.seq = seq;
+	    this.value = value;
+	    this.born = born;
+	    this.died = FOREVER;
+	}
+
+	// liveAt -- Return true if this entry is live at the given version.
+	boolean liveAt(long version) {
+	    return ((born <= version) && (version < died));
+	}
+    }
+
+    // A retired entry, waiting to be purged, with the node holding it ...
+    static class Retired<T> {
+	Node<T> node;
+	Entry<T> entry;
+
+	Retired(Node<T> node, Entry<T> entry) {
+	    this.node = node;
+	    this.entry = entry;
+	}
+    }
+
+    Node<T> root;
+    long insertions;
+    volatile int size;
+    Deque<Retired<T>> retired;     // in the order that they were retired
+
+    // Default constructor ...
+    public DiscriminationTree() {
+	this.root = new Node<T>();
+	this.insertions = 0;
+	this.size = 0;
+	this.retired = new ArrayDeque<Retired<T>>();
+    }
+
+    // size -- Return the number of live values stored in the tree.
+    public int size() {
+	return (size);
+    }
+
+    // insert -- Store the given value under the given literal.
+    public void insert(Literal key, T value) {
+	insert(key, value, 0);
+    }
+
+    // insert -- Store the given value under the given literal, live from
+    // the given version onwards.
+    public void insert(Literal key, T value, long version) {
+	Node<T> node = child(root, predicateToken(key), key.args.size());
+	for (Term arg : key.args)
+	    node = insertTerm(node, arg);
+	node.add(new Entry<T>(insertions, value, version));
+	insertions++;
+	size++;
+    }
+
+    // find -- Return the node holding the values stored under the given
+    // literal, or null.
+    Node<T> find(Literal key) {
+	Node<T> node = root.get(predicateToken(key));
+	for (int i = 0; (node != null) && (i < key.args.size()); i++)
+	    node = findTerm(node, key.args.get(i));
+	return (node);
+    }
+
+    // liveEntry -- Return the live entry for the given value at the given
+    // node, or null.
+    static <T> Entry<T> liveEntry(Node<T> node, T value) {
+	if ((node == null) || (node.entries == null))
+	    return (null);
+	for (Entry<T> e : node.entries)
+	    if ((e.value == value) && (e.died == FOREVER))
+		return (e);
+	return (null);
+    }
+
+    // remove -- Remove the given value, stored under the given literal,
+    // from the tree at once.  Values are compared by identity.  Return
+    // false if the value was not found.
+    public boolean remove(Literal key, T value) {
+	Node<T> node = find(key);
+	Entry<T> e = liveEntry(node, value);
+	if ((e == null) || !node.drop(e))
+	    return (false);
+	prune(node);
+	size--;
+	return (true);
+    }
+
+    // retire -- Mark the given value, stored under the given literal, as
+    // removed at the given version, leaving it visible to readers of
+    // earlier versions.  Return false if the value was not found.
+    public boolean retire(Literal key, T value, long version) {
+	Node<T> node = find(key);
+	Entry<T> e = liveEntry(node, value);
+	if (e == null)
+	    return (false);
+	e.died = version;
+	retired.addLast(new Retired<T>(node, e));
+	size--;
+	return (true);
+    }
+
+    // purge -- Remove the retired values that are not live at the given
+    // version or at any later one.
+    public void purge(long version) {
+	while (!retired.isEmpty() && (retired.peekFirst().entry.died <= version)) {
+	    Retired<T> r = retired.removeFirst();
+	    r.node.drop(r.entry);
+	    prune(r.node);
+	}
+    }
+
+    // prune -- Unlink the given node from the tree if it is empty, and
+    // then each ancestor left empty in turn.
+    void prune(Node<T> node) {
+	while ((node != root) && (node.parent != null) && node.isEmpty()) {
+	    Node<T> parent = node.parent;
+	    parent.unlink(node.token, node);
+	    node = parent;
+	}
+    }
+
+    // retrieve -- Return the values stored under literals that are
+    // structurally compatible with the given query literal, under the
+    // given binding list (which may be null).
+    public List<T> retrieve(Literal query, BindingList bl) {
+	return (retrieve(query, bl, FOREVER - 1));
+    }
+
+    // retrieve -- Return the values live at the given version that are
+    // stored under literals structurally compatible with the given query
+    // literal, under the given binding list (which may be null).
+    public List<T> retrieve(Literal query, BindingList bl, long version) {
+	List<Long> tokens = new ArrayList<Long>();
+	List<Integer> arities = new ArrayList<Integer>();
+	tokens.add(predicateToken(query));
+	arities.add(query.args.size());
+	for (Term arg : query.args)
+	    flatten(arg, bl, tokens, arities);
+	// Record where each query subterm ends, so that stored variables
+	// can skip over them ...
+	int[] next = new int[tokens.size()];
+	for (int i = tokens.size() - 1; i >= 0; i--) {
+	    int j = i + 1;
+	    for (int k = 0; k < arities.get(i); k++)
+		j = next[j];
+	    next[i] = j;
+	}
+	List<Entry<T>> found = new ArrayList<Entry<T>>();
+	Node<T> start = root.get(tokens.get(0));
+	if (start != null)
+	    match(start, tokens, next, 1, version, found);
+	return (values(found));
+    }
+
+    // all -- Return every value live at the given version, in the order in
+    // which they were inserted.
+    public List<T> all(long version) {
+	List<Entry<T>> found = new ArrayList<Entry<T>>();
+	Deque<Node<T>> open = new ArrayDeque<Node<T>>();
+	open.push(root);
+	while (!open.isEmpty()) {
+	    Node<T> node = open.pop();
+	    List<Entry<T>> entries = node.entries;
+	    if (entries != null)
+		for (Entry<T> e : entries)
+		    if (e.liveAt(version))
+			found.add(e);
+	    for (Node<T> child : node.childList())
+		open.push(child);
+	}
+	return (values(found));
+    }
+
+    // values -- Return the values of the given entries, in the order in
+    // which they were inserted.
+    static <T> List<T> values(List<Entry<T>> found) {
+	if (found.size() > 1) {
+	    // Restore insertion order ...
+	    Collections.sort(found, new Comparator<Entry<T>>() {
+		    public int compare(Entry<T> e1, Entry<T> e2) {
+			return (Long.compare(e1.seq, e2.seq));
+		    }
+		});
+	}
+	List<T> result = new ArrayList<T>(found.size());
+	for (Entry<T> e : found)
+	    result.add(e.value);
+	return (result);
+    }
+
+    // token -- Pack a symbol identifier, an arity, and a kind of token
+    // into a single token.
+    static long token(int id, int arity, long kind) {
+	return ((((long) id) << 32) | (((long) arity) << 2) | kind);
+    }
+
+    // predicateToken -- Return the token used for the predicate of the
+    // given literal.
+    static long predicateToken(Literal lit) {
+	return (token(lit.pred.id, lit.args.size(), PREDICATE));
+    }
+
+    // termToken -- Return the token used for the top of the given term,
+    // which should not be a bound variable.
+    static long termToken(Term t) {
+	if (t.c != null)
+	    return (token(t.c.id, 0, CONSTANT));
+	if (t.f != null)
+	    return (token(t.f.func.id, t.f.args.size(), FUNCTION));
+	return (WILDCARD);
+    }
+
+    // child -- Return the child of the given node for the given token,
+    // creating it if needed.
+    Node<T> child(Node<T> node, long token, int arity) {
+	Node<T> next = node.get(token);
+	if (next == null) {
+	    next = new Node<T>();
+	    next.arity = arity;
+	    next.parent = node;
+	    next.token = token;
+	    node.put(token, next);
+	}
+	return (next);
+    }
+
+    // insertTerm -- Extend the path from the given node with the tokens
+    // for the given stored term, returning the last node on the path.
+    Node<T> insertTerm(Node<T> node, Term t) {
+	if (t.f != null) {
+	    node = child(node, termToken(t), t.f.args.size());
+	    for (Term arg : t.f.args)
+		node = insertTerm(node, arg);
+	    return (node);
+	}
+	return (child(node, termToken(t), 0));
+    }
+
+    // findTerm -- Follow the path for the given stored term from the
+    // given node, returning null if it is not present.
+    Node<T> findTerm(Node<T> node, Term t) {
+	node = node.get(termToken(t));
+	if ((node != null) && (t.f != null)) {
+	    for (int i = 0; (node != null) && (i < t.f.args.size()); i++)
+		node = findTerm(node, t.f.args.get(i));
+	}
+	return (node);
+    }
+
+    // flatten -- Append the tokens for the given query term, dereferenced
+    // through the given binding list, to the given token list.  Unbound
+    // variables produce UNBOUND tokens.
+    static void flatten(Term t, BindingList bl,
+			List<Long> tokens, List<Integer> arities) {
+	while ((t.v != null) && (bl != null)) {
+	    Term value = bl.boundValue(t.v);
+	    if (value == null)
+		break;
+	    t = value;
+	}
+	if (t.v != null) {
+	    tokens.add(UNBOUND);
+	    arities.add(0);
+	} else if (t.f != null) {
+	    tokens.add(termToken(t));
+	    arities.add(t.f.args.size());
+	    for (Term arg : t.f.args)
+		flatten(arg, bl, tokens, arities);
+	} else {
+	    tokens.add(termToken(t));
+	    arities.add(0);
+	}
+    }
+
+    // skip -- Collect the nodes reached from the given node by skipping
+    // over the given number of complete stored subterms.
+    void skip(Node<T> node, int count, List<Node<T>> out) {
+	if (count == 0) {
+	    out.add(node);
+	    return;
+	}
+	for (Node<T> next : node.childList())
+	    skip(next, count - 1 + next.arity, out);
+    }
+
+    // match -- Collect entries below the given node that are compatible
+    // with the query tokens starting at the given position.
+    void match(Node<T> node, List<Long> tokens, int[] next, int i,
+	       long version, List<Entry<T>> found) {
+	if (i == tokens.size()) {
+	    List<Entry<T>> entries = node.entries;
+	    if (entries != null)
+		for (Entry<T> e : entries)
+		    if (e.liveAt(version))
+			found.add(e);
+	    return;
+	}
+	long token = tokens.get(i);
+	if (token == UNBOUND) {
+	    // An unbound query variable matches any stored subterm ...
+	    List<Node<T>> ends = new ArrayList<Node<T>>();
+	    skip(node, 1, ends);
+	    for (Node<T> end : ends)
+		match(end, tokens, next, i + 1, version, found);
+	    return;
+	}
+	Node<T> exact = node.get(token);
+	if (exact != null)
+	    match(exact, tokens, next, i + 1, version, found);
+	// A stored variable matches any query subterm ...
+	Node<T> wild = node.get(WILDCARD);
+	if (wild != null)
+	    match(wild, tokens, next, next[i], version, found);
+    }
+
+
+}
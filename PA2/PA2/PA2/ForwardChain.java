@@ -0,0 +1,135 @@
+//
+// ForwardChain
+//
+// This class implements a forward chaining inference procedure.  Rather
+// than searching backward from each query, all of the consequences of the
+// knowledge base are derived once, using a Rete network, and stored in a
+// materialized collection of facts.  Queries are then answered by matching
+// against these facts alone, which is much cheaper when many queries are
+// posed against a mostly static set of rules.  Facts and rules added
+// through this object are propagated incrementally through the network,
+// so only their new consequences are derived.  The network is built when
+// "materialize" is called, or when the first query is posed.  The network
+// is built and extended while holding the lock of the knowledge base, so
+// that it sees the changes in the order they are made, and queries read a
+// snapshot of the materialized facts (see KnowledgeBase), so they are not
+// disturbed by facts derived while they run.  The network records the
+// version of the knowledge base that it reflects.  A change made some other
+// way, such as a fact or rule removed, or a fact asserted directly on the
+// knowledge base, leaves the network behind, and it is then built again
+// from scratch before the next query is answered, since derived facts are
+// not counted and cannot be taken back one at a time.
+//
+
+
+import java.util.*;
+
+
+public class ForwardChain extends BackwardChain {
+
+    public volatile ReteNetwork network;
+    volatile BackwardChain factEngine;
+    volatile long networkVersion;    // version of the knowledge base reflected
+
+    // Default constructor ...
+    public ForwardChain() {
+	super();
+	this.network = null;
+    }
+
+    // Constructor for reasoning over an existing knowledge base ...
+    public ForwardChain(KnowledgeBase kb) {
+	super(kb);
+	this.network = null;
+    }
+
+    // materialize -- Compile the rules of the knowledge base into a Rete
+    // network and derive all of the consequences of its facts.
+    public void materialize() {
+	synchronized (kb) {
+	    ReteNetwork built = new ReteNetwork(this);
+	    for (Rule r : kb.rules)
+		built.addRule(r);
+	    for (Literal fact : kb.facts)
+		built.addFact(fact);
+	    factEngine = new BackwardChain(built.store);
+	    networkVersion = kb.modifications;
+	    network = built;
+	}
+    }
+
+    // current -- Return true if the network has been built and reflects
+    // the latest version of the knowledge base.
+    boolean current() {
+	return ((network != null) && (networkVersion == kb.modifications));
+    }
+
+    // ensureMaterialized -- Build the network, if it has not been built or
+    // has fallen behind the knowledge base.
+    void ensureMaterialized() {
+	if (!current()) {
+	    synchronized (kb) {
+		if (!current())
+		    materialize();
+	    }
+	}
+    }
+
+    // addFact -- Add the given fact to the knowledge base, deriving its
+    // consequences incrementally.
+    public void addFact(Literal fact) {
+	synchronized (kb) {
+	    boolean incremental = current();
+	    kb.addFact(fact);
+	    if (incremental) {
+		network.addFact(fact);
+		networkVersion = kb.modifications;
+	    }
+	}
+    }
+
+    // addRule -- Add the given rule to the knowledge base, deriving its
+    // consequences incrementally.
+    public void addRule(Rule r) {
+	synchronized (kb) {
+	    boolean incremental = current();
+	    kb.addRule(r);
+	    if (incremental) {
+		network.addRule(r);
+		networkVersion = kb.modifications;
+	    }
+	}
+    }
+
+    // removeFact -- Remove the first fact equal to the given one from the
+    // knowledge base.  Return false if there is no such fact.  The network
+    // is built again before the next query.
+    public boolean removeFact(Literal fact) {
+	return (kb.removeFact(fact));
+    }
+
+    // removeRule -- Remove the first rule equal to the given one from the
+    // knowledge base.  Return false if there is no such rule.  The network
+    // is built again before the next query.
+    public boolean removeRule(Rule r) {
+	return (kb.removeRule(r));
+    }
+
+    // askFacts -- Examine the materialized facts to determine if any of
+    // them unify with the given literal, under the given binding list.
+    // Return the most general unifier, or null if there is none.
+    BindingList askFacts(Literal lit, BindingList bl) {
+	ensureMaterialized();
+	return (factEngine.askFacts(lit, bl));
+    }
+
+    // answers -- Return a lazy iterator over all of the proofs of the given
+    // list of goal literals, under the given binding list, found by matching
+    // the goals against the materialized facts.
+    public Answers answers(List<Literal> goals, BindingList bl) {
+	ensureMaterialized();
+	return (factEngine.answers(goals, bl));
+    }
+
+
+}
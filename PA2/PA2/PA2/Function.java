@@ -5,7 +5,8 @@
 // name and a list of arguments, with each argument being a term.  Methods
 // are provided for identifying all of the variables in a function (including
 // those appearing deep within arguments) and for substituting variables with
-// their corresponding values, according to a given binding list.
+// their corresponding values, according to a given binding list.  Ground
+// function invocations are shared, rather than copied, by substitution.
 //
 // David Noelle -- Tue Apr 10 17:08:45 PDT 2007
 //
@@ -19,6 +20,7 @@ public class Function {
 
     public FunctionName func;
     public List<Term> args;
+    byte groundness = Term.UNKNOWN;
 
     // Default constructor ...
     public Function() {
@@ -26,6 +28,12 @@ public class Function {
 	this.args = new ArrayList<Term>();
     }
 
+    // Constructor for a given function name, with no arguments yet ...
+    public Function(FunctionName func) {
+	this.func = func;
+	this.args = new ArrayList<Term>();
+    }
+
     // equals -- Return true if and only if this function instance is the
     // same as the given argument.
     public boolean equals(Function f) {
@@ -39,6 +47,18 @@ public class Function {
 	return (true);
     }
 
+    // isGround -- Return true if and only if no variables appear in the
+    // arguments of this function invocation.
+    public boolean isGround() {
+	if (groundness == Term.UNKNOWN) {
+	    boolean ground = true;
+	    for (Term arg : args)
+		ground = ground && arg.isGround();
+	    groundness = ground ? Term.GROUND : Term.NONGROUND;
+	}
+	return (groundness == Term.GROUND);
+    }
+
     // allVariables -- Return a set of all the variables in this function.
     public Set<Variable> allVariables() {
 	Set<Variable> allVs = new HashSet<Variable>();
@@ -48,10 +68,12 @@ public class Function {
 	return (allVs);
     }
 
-    // subst -- Return a new Function object that is the result of applying
-    // the given binding list to this function invocation.  Return null on 
-    // error.
+    // subst -- Return a Function object that is the result of applying
+    // the given binding list to this function invocation.  A ground
+    // function invocation is returned as it is.  Return null on error.
     public Function subst(BindingList bl) {
+	if (isGround())
+	    return (this);
 	Function result = new Function();
 	result.func = func;
 	for (Term arg : args) {
@@ -63,6 +85,7 @@ public class Function {
     // read -- Read a function invocation from the given scanner, filling
     // in this Function object with the results.  Return false on error.
     public boolean read(Scanner inScanner) {
+	groundness = Term.UNKNOWN;
 	inScanner.useDelimiter("[\\s]+");
 	// Find and discard opening parenthesis ...
 	try {
@@ -13,6 +13,16 @@ public class FunctionName extends Symbol {
     static String gensymPrefix = "FUNC-";
     static int gensymCounter = 1;
 
+    // Default constructor ...
+    public FunctionName() {
+	super();
+    }
+
+    // Constructor with name specified ...
+    public FunctionName(String name) {
+	super(name);
+    }
+
 
 }
 
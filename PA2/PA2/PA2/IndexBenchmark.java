@@ -0,0 +1,80 @@
+//
+// IndexBenchmark
+//
+// This class provides a "main" method that measures how well the knowledge
+// base indexes narrow down the candidates considered by the backward
+// chaining inference procedure.  A large synthetic collection of facts is
+// generated, with most of the discriminating structure buried inside
+// function arguments.  A batch of goals is then posed, and the number of
+// candidate facts touched by the predicate index alone is compared with
+// the number returned by the discrimination tree, along with the time
+// taken by "askFacts".  The number of facts may be given as the first
+// command line argument.
+//
+
+
+import java.util.*;
+
+
+public class IndexBenchmark {
+
+    // parseLiteral -- Read a literal from the given string.
+    static Literal parseLiteral(String text) {
+	Literal lit = new Literal();
+	lit.read(new Scanner(text));
+	return (lit);
+    }
+
+    public static void main(String[] args) {
+	int numFacts = 100000;
+	if (args.length > 0)
+	    numFacts = Integer.parseInt(args[0]);
+	int numGroups = 100;
+	BackwardChain engine = new BackwardChain();
+	Random rand = new Random(175);
+
+	// Generate facts of the form (Link (Node Gi Kj) (Port Pk)) ...
+	int[] groups = new int[numFacts];
+	long start = System.nanoTime();
+	for (int i = 0; i < numFacts; i++) {
+	    groups[i] = rand.nextInt(numGroups);
+	    engine.kb.addFact(parseLiteral(String.format("(Link (Node G%d K%d) (Port P%d))",
+							 groups[i], i, rand.nextInt(8))));
+	}
+	long loadNanos = System.nanoTime() - start;
+
+	// Generate goals that are selective only deep within functions,
+	// about half of which match a fact ...
+	List<Literal> goals = new ArrayList<Literal>();
+	for (int i = 0; i < 1000; i++) {
+	    int k = rand.nextInt(numFacts);
+	    int g = (i % 2 == 0) ? groups[k] : rand.nextInt(numGroups);
+	    goals.add(parseLiteral(String.format("(Link (Node G%d K%d) ?p)",
+						 g, k)));
+	}
+
+	long predCandidates = 0;
+	long treeCandidates = 0;
+	int proven = 0;
+	start = System.nanoTime();
+	for (Literal goal : goals) {
+	    predCandidates += engine.kb.factsByPred.get(goal.pred.name).size();
+	    treeCandidates += engine.kb.candidateFacts(goal, null).size();
+	    if (engine.askFacts(goal) != null)
+		proven++;
+	}
+	long askNanos = System.nanoTime() - start;
+
+	System.out.printf("facts:                         %d\n", numFacts);
+	System.out.printf("load time (ms):                %.1f\n", loadNanos / 1e6);
+	System.out.printf("goals:                         %d (%d proven)\n",
+			  goals.size(), proven);
+	System.out.printf("candidates, predicate index:   %.1f per goal\n",
+			  (double) predCandidates / goals.size());
+	System.out.printf("candidates, discrimination:    %.1f per goal\n",
+			  (double) treeCandidates / goals.size());
+	System.out.printf("askFacts time (us per goal):   %.1f\n",
+			  askNanos / 1e3 / goals.size());
+    }
+
+}
@@ -0,0 +1,74 @@
+//
+// JoinNode
+//
+// This class implements a join node in a Rete network.  There is one join
+// node for each antecedent of each rule, chained together in the order of
+// the antecedents.  Each join node keeps a beta memory of "tokens":  binding
+// lists for partial matches of the preceding antecedents.  A join node
+// combines its tokens with the facts in the alpha memory for its own
+// antecedent, unifying the antecedent with each fact under each token.
+// Successful joins are passed on to the next join node as new tokens or,
+// at the end of the chain, used to instantiate the consequent of the rule
+// as a newly derived fact.  Tokens and facts can arrive in any order, and
+// each new arrival is joined with everything that arrived before it.
+//
+
+
+import java.util.*;
+
+
+public class JoinNode {
+
+    public ReteNetwork network;
+    public Rule rule;                  // standardized apart copy
+    public Literal pattern;            // this antecedent of the rule
+    public AlphaMemory alpha;
+    public List<BindingList> tokens;   // the beta memory
+    public JoinNode next;              // null at the end of the chain
+
+    // Constructor ...
+    public JoinNode(ReteNetwork network, Rule rule, Literal pattern,
+		    AlphaMemory alpha) {
+	this.network = network;
+	this.rule = rule;
+	this.pattern = pattern;
+	this.alpha = alpha;
+	this.tokens = new ArrayList<BindingList>();
+	this.next = null;
+    }
+
+    // leftActivate -- Record the given token, and join it with all of the
+    // facts in the alpha memory.
+    public void leftActivate(BindingList token) {
+	tokens.add(token);
+	// The alpha memory may grow while it is being examined ...
+	for (int i = 0; i < alpha.facts.size(); i++)
+	    join(token, alpha.facts.get(i));
+    }
+
+    // rightActivate -- Join the given fact, newly added to the alpha memory,
+    // with all of the recorded tokens.
+    public void rightActivate(Literal fact) {
+	for (int i = 0; i < tokens.size(); i++)
+	    join(tokens.get(i), fact);
+    }
+
+    // join -- Attempt to extend the given token with a match between this
+    // antecedent and the given fact, passing on any result.  The token is
+    // extended in place, and only copied if the match succeeds.
+    void join(BindingList token, Literal fact) {
+	int mark = token.mark();
+	if (network.engine.unify(pattern, fact, token) == null)
+	    return;
+	BindingList result = new BindingList(token);
+	token.undo(mark);
+	if (next != null) {
+	    next.leftActivate(result);
+	} else {
+	    // All antecedents match, so the consequent holds ...
+	    network.derive(rule.consequent.subst(result));
+	}
+    }
+
+
+}
@@ -0,0 +1,190 @@
+//
+// JoinOrderer
+//
+// This class chooses the order in which the antecedents of a rule (or the
+// goals of a conjunctive query) are proven, at the time that they are
+// about to be proven, so that the most selective goals come first and
+// fewer partial results are built.  Statistics are gathered from the facts
+// of each predicate:  the number of facts, and the number of distinct
+// values in each argument position.  The cost of a goal is estimated as
+// the number of facts it is expected to match, dividing the number of
+// facts by the number of distinct values at each bound argument, where an
+// argument is bound if it is a constant, a function invocation, or a
+// variable with a value under the current bindings or from a goal placed
+// earlier.  Goals are placed greedily, cheapest first.  Only goals for
+// predicates without rules are moved, however.  A goal for a predicate
+// with rules is placed only once every goal written before it has been
+// placed, so it is proven with at least the bindings that it was written
+// with.  Moving such a goal ahead of the goals that bind its arguments
+// could turn a recursive rule that climbs a finite relation into one that
+// calls itself without end.  Ties keep the order in which the goals were
+// written.  Reordering does not change the answers found, only the order
+// in which they are found.  A BackwardChain uses a JoinOrderer when one
+// is given as its "orderer".
+//
+// The number of facts of each predicate is kept up to date by the
+// knowledge base, and is read without its lock.  The distinct values are
+// gathered from a snapshot of the knowledge base when first needed, and
+// again once the number of facts has drifted by more than an eighth since
+// they were gathered, so they are only approximate while the knowledge
+// base changes.  Bindings are followed without being compressed, so the
+// binding list of the query being proven is not changed.
+//
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+public class JoinOrderer {
+
+    // The cost added for a goal whose predicate has rules ...
+    static final double RULE_COST = 1000.0;
+    // The distinct values are gathered again once the number of facts has
+    // changed by more than this fraction of the number gathered ...
+    static final int DRIFT = 8;
+
+    // Statistics for the facts of a predicate ...
+    static class Stats {
+	int count;               // number of facts when gathered
+	int[] distinct;          // distinct values, by argument position
+    }
+
+    public KnowledgeBase kb;
+    Map<String, Stats> stats;
+
+    // Constructor ...
+    public JoinOrderer(KnowledgeBase kb) {
+	this.kb = kb;
+	this.stats = new ConcurrentHashMap<String, Stats>();
+    }
+
+    // stats -- Return the statistics for the facts of the predicate of
+    // the given goal, gathering them if they are missing or have drifted
+    // too far from the given current number of facts.
+    Stats stats(Literal goal, int count) {
+	Stats s = stats.get(goal.pred.name);
+	if ((s != null) && (s.distinct.length == goal.args.size())
+	    && (Math.abs(count - s.count) <= s.count / DRIFT))
+	    return (s);
+	// Read every fact of the predicate from a snapshot, with a goal
+	// having only unbound variables as arguments ...
+	Literal general = new Literal(goal.pred);
+	for (int i = 0; i < goal.args.size(); i++)
+	    general.args.add(new Term(new Variable("?arg" + i)));
+	List<Literal> predFacts;
+	long version = kb.openSnapshot();
+	try {
+	    predFacts = kb.candidateFacts(general, null, version);
+	} finally {
+	    kb.closeSnapshot(version);
+	}
+	int arity = goal.args.size();
+	// Ground terms of facts are shared, so they can be told apart by
+	// identity, except for constants, which are told apart by symbol ...
+	List<Set<Object>> values = new ArrayList<Set<Object>>();
+	for (int i = 0; i < arity; i++)
+	    values.add(new HashSet<Object>());
+	for (Literal fact : predFacts) {
+	    for (int i = 0; i < arity; i++) {
+		Term arg = fact.args.get(i);
+		values.get(i).add((arg.c != null) ? (Object) arg.c.id : arg);
+	    }
+	}
+	s = new Stats();
+	s.count = predFacts.size();
+	s.distinct = new int[arity];
+	for (int i = 0; i < arity; i++)
+	    s.distinct[i] = values.get(i).size();
+	stats.put(goal.pred.name, s);
+	return (s);
+    }
+
+    // hasRules -- Return true if the given predicate has rules.
+    boolean hasRules(String pred) {
+	List<Rule> predRules = kb.rulesByPred.get(pred);
+	return ((predRules != null) && !predRules.isEmpty());
+    }
+
+    // value -- Return the value of the given term under the given binding
+    // list (which may be null), following chains of variables without
+    // compressing them.
+    static Term value(Term t, BindingList bl) {
+	while ((t.v != null) && (bl != null)) {
+	    Term next = bl.boundValue(t.v);
+	    if (next == null)
+		break;
+	    t = next;
+	}
+	return (t);
+    }
+
+    // isBound -- Return true if the given term has a value, under the
+    // given bindings and the given set of variables bound by earlier goals.
+    static boolean isBound(Term t, BindingList bl, Set<Integer> bound) {
+	Term value = value(t, bl);
+	return ((value.v == null) || bound.contains(value.v.id));
+    }
+
+    // collect -- Add the variables of the given term, under the given
+    // bindings, to the given set.
+    static void collect(Term t, BindingList bl, Set<Integer> bound) {
+	Term value = value(t, bl);
+	if (value.v != null)
+	    bound.add(value.v.id);
+	else if ((value.f != null) && !value.isGround())
+	    for (Term arg : value.f.args)
+		collect(arg, bl, bound);
+    }
+
+    // cost -- Return the estimated cost of proving the given goal next.
+    double cost(Literal goal, BindingList bl, Set<Integer> bound) {
+	int count = kb.factCount(goal.pred.name);
+	Stats s = stats(goal, count);
+	double estimate = count;
+	int boundArgs = 0;
+	for (int i = 0; i < goal.args.size(); i++) {
+	    if (isBound(goal.args.get(i), bl, bound)) {
+		boundArgs++;
+		if (s.distinct[i] > 1)
+		    estimate /= s.distinct[i];
+	    }
+	}
+	if (hasRules(goal.pred.name))
+	    estimate += RULE_COST / (1 + boundArgs);
+	return (estimate);
+    }
+
+    // order -- Return the given goals in the order in which they should be
+    // proven, under the given binding list (which may be null).
+    public List<Literal> order(List<Literal> goals, BindingList bl) {
+	if (goals.size() < 2)
+	    return (goals);
+	List<Literal> remaining = new LinkedList<Literal>(goals);
+	List<Literal> result = new ArrayList<Literal>(goals.size());
+	Set<Integer> bound = new HashSet<Integer>();
+	while (!remaining.isEmpty()) {
+	    Literal best = null;
+	    double bestCost = 0.0;
+	    boolean first = true;
+	    for (Literal goal : remaining) {
+		// A goal with rules waits for the goals written before it ...
+		if (first || !hasRules(goal.pred.name)) {
+		    double c = cost(goal, bl, bound);
+		    if ((best == null) || (c < bestCost)) {
+			best = goal;
+			bestCost = c;
+		    }
+		}
+		first = false;
+	    }
+	    remaining.remove(best);
+	    result.add(best);
+	    for (Term arg : best.args)
+		collect(arg, bl, bound);
+	}
+	return (result);
+    }
+
+
+}
@@ -0,0 +1,292 @@
+//
+// KBImage
+//
+// This class implements a binary image of a loaded knowledge base, so that
+// a knowledge base can be saved once and then restored quickly, without
+// parsing its text files again.  The image holds a table of the symbol
+// names used, a table of terms, and then the facts and the rules.  Each
+// term is written once, as a kind, a symbol, and (for a function
+// invocation) the positions of its argument terms in the table, which
+// always come earlier.  Since the ground terms of facts are shared by the
+// knowledge base, each distinct ground term appears in the table only once,
+// and the restored terms are shared in the same way.  Literals refer to
+// terms by their positions in the table.  All numbers are written as 32 bit
+// integers.  An image is built in memory and written in one piece.  It is
+// restored by mapping the file into memory and decoding it directly, after
+// which the facts and rules are added to the knowledge base in their
+// original order.  The indexes over facts and
+// rules are not stored in the image, since they are made of Java objects,
+// so they are rebuilt as the facts and rules are added.
+//
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+
+public class KBImage {
+
+    static final int MAGIC = 0x4B42494D;     // "KBIM"
+    static final int VERSION = 1;
+
+    // Kinds of terms ...
+    static final int CONSTANT = 0;
+    static final int VARIABLE = 1;
+    static final int FUNCTION = 2;
+
+    // State used while writing ...
+    Map<String, Integer> symbolIndex;
+    List<String> symbols;
+    Map<Term, Integer> termIndex;
+    List<Term> terms;
+    ByteBuffer out;
+
+    // State used while reading ...
+    ByteBuffer in;
+    String[] names;
+    Constant[] constants;
+    Variable[] variables;
+    Predicate[] predicates;
+    FunctionName[] functions;
+    Term[] table;
+
+    // write -- Write an image of the given knowledge base to the named file.
+    // Return false on error.
+    public static boolean write(KnowledgeBase kb, String filename) {
+	try {
+	    new KBImage().writeImage(kb, filename);
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	}
+    }
+
+    // read -- Add the facts and rules in the image in the named file to the
+    // given knowledge base.  Return false on error.
+    public static boolean read(KnowledgeBase kb, String filename) {
+	try {
+	    new KBImage().readImage(kb, filename);
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	} catch (RuntimeException e) {
+	    // The image is malformed ...
+	    return (false);
+	}
+    }
+
+    // symbol -- Return the position of the given name in the symbol table
+    // being written.
+    int symbol(String name) {
+	Integer index = symbolIndex.get(name);
+	if (index == null) {
+	    index = symbols.size();
+	    symbols.add(name);
+	    symbolIndex.put(name, index);
+	}
+	return (index);
+    }
+
+    // term -- Return the position of the given term in the term table
+    // being written, adding it and its arguments if needed.
+    int term(Term t) {
+	Integer index = termIndex.get(t);
+	if (index == null) {
+	    if (t.f != null) {
+		symbol(t.f.func.getName());
+		for (Term arg : t.f.args)
+		    term(arg);
+	    } else {
+		symbol((t.c != null) ? t.c.getName() : t.v.getName());
+	    }
+	    index = terms.size();
+	    terms.add(t);
+	    termIndex.put(t, index);
+	}
+	return (index);
+    }
+
+    // collect -- Add the symbols and terms of the given literal to the
+    // tables being written.
+    void collect(Literal lit) {
+	symbol(lit.pred.getName());
+	for (Term arg : lit.args)
+	    term(arg);
+    }
+
+    // writeImage -- Write an image of the given knowledge base to the named
+    // file.
+    void writeImage(KnowledgeBase kb, String filename) throws IOException {
+	symbolIndex = new HashMap<String, Integer>();
+	symbols = new ArrayList<String>();
+	termIndex = new IdentityHashMap<Term, Integer>();
+	terms = new ArrayList<Term>();
+	for (Literal fact : kb.facts)
+	    collect(fact);
+	for (Rule r : kb.rules) {
+	    symbol(r.name);
+	    collect(r.consequent);
+	    for (Literal ante : r.antecedents)
+		collect(ante);
+	}
+	out = ByteBuffer.allocate(1 << 16);
+	putInt(MAGIC);
+	putInt(VERSION);
+	putInt(symbols.size());
+	for (String name : symbols) {
+	    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+	    putInt(bytes.length);
+	    reserve(bytes.length);
+	    out.put(bytes);
+	}
+	putInt(terms.size());
+	for (Term t : terms) {
+	    if (t.c != null) {
+		putInt(CONSTANT);
+		putInt(symbolIndex.get(t.c.getName()));
+	    } else if (t.v != null) {
+		putInt(VARIABLE);
+		putInt(symbolIndex.get(t.v.getName()));
+	    } else {
+		putInt(FUNCTION);
+		putInt(symbolIndex.get(t.f.func.getName()));
+		putInt(t.f.args.size());
+		for (Term arg : t.f.args)
+		    putInt(termIndex.get(arg));
+	    }
+	}
+	putInt(kb.facts.size());
+	for (Literal fact : kb.facts)
+	    writeLiteral(fact);
+	putInt(kb.rules.size());
+	for (Rule r : kb.rules) {
+	    putInt(symbolIndex.get(r.name));
+	    writeLiteral(r.consequent);
+	    putInt(r.antecedents.size());
+	    for (Literal ante : r.antecedents)
+		writeLiteral(ante);
+	}
+	out.flip();
+	FileChannel channel = FileChannel.open(Paths.get(filename),
+					       StandardOpenOption.WRITE,
+					       StandardOpenOption.CREATE,
+					       StandardOpenOption.TRUNCATE_EXISTING);
+	try {
+	    while (out.hasRemaining())
+		channel.write(out);
+	} finally {
+	    channel.close();
+	}
+    }
+
+    // reserve -- Make room for the given number of bytes in the output
+    // buffer.
+    void reserve(int bytes) {
+	if (out.remaining() < bytes) {
+	    ByteBuffer larger = ByteBuffer.allocate(
+		Math.max(out.capacity() * 2, out.position() + bytes));
+	    out.flip();
+	    larger.put(out);
+	    out = larger;
+	}
+    }
+
+    // putInt -- Append an integer to the output buffer.
+    void putInt(int value) {
+	reserve(4);
+	out.putInt(value);
+    }
+
+    // writeLiteral -- Write the given literal, as its predicate and the
+    // positions of its arguments in the term table.
+    void writeLiteral(Literal lit) {
+	putInt(symbolIndex.get(lit.pred.getName()));
+	putInt(lit.args.size());
+	for (Term arg : lit.args)
+	    putInt(termIndex.get(arg));
+    }
+
+    // readImage -- Add the facts and rules in the image in the named file to
+    // the given knowledge base.
+    void readImage(KnowledgeBase kb, String filename) throws IOException {
+	FileChannel channel = FileChannel.open(Paths.get(filename),
+					       StandardOpenOption.READ);
+	try {
+	    in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	} finally {
+	    channel.close();
+	}
+	if ((in.getInt() != MAGIC) || (in.getInt() != VERSION))
+	    throw new IOException("Not a knowledge base image: " + filename);
+	int count = in.getInt();
+	names = new String[count];
+	constants = new Constant[count];
+	variables = new Variable[count];
+	predicates = new Predicate[count];
+	functions = new FunctionName[count];
+	byte[] bytes = new byte[64];
+	for (int i = 0; i < count; i++) {
+	    int length = in.getInt();
+	    if (length > bytes.length)
+		bytes = new byte[length];
+	    in.get(bytes, 0, length);
+	    names[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+	table = new Term[in.getInt()];
+	for (int i = 0; i < table.length; i++) {
+	    int kind = in.getInt();
+	    int sym = in.getInt();
+	    if (kind == CONSTANT) {
+		if (constants[sym] == null)
+		    constants[sym] = new Constant(names[sym]);
+		table[i] = new Term(constants[sym]);
+	    } else if (kind == VARIABLE) {
+		if (variables[sym] == null)
+		    variables[sym] = new Variable(names[sym]);
+		table[i] = new Term(variables[sym]);
+	    } else {
+		if (functions[sym] == null)
+		    functions[sym] = new FunctionName(names[sym]);
+		Function f = new Function(functions[sym]);
+		int arity = in.getInt();
+		for (int k = 0; k < arity; k++)
+		    f.args.add(table[in.getInt()]);
+		table[i] = new Term(f);
+	    }
+	}
+	int factCount = in.getInt();
+	for (int i = 0; i < factCount; i++)
+	    kb.addFact(readLiteral());
+	int ruleCount = in.getInt();
+	for (int i = 0; i < ruleCount; i++) {
+	    Rule r = new Rule();
+	    r.name = names[in.getInt()];
+	    r.consequent = readLiteral();
+	    int anteCount = in.getInt();
+	    for (int k = 0; k < anteCount; k++)
+		r.antecedents.add(readLiteral());
+	    kb.addRule(r);
+	}
+    }
+
+    // readLiteral -- Read a literal, as its predicate and the positions of
+    // its arguments in the term table.
+    Literal readLiteral() {
+	int sym = in.getInt();
+	if (predicates[sym] == null)
+	    predicates[sym] = new Predicate(names[sym]);
+	Literal lit = new Literal(predicates[sym]);
+	int arity = in.getInt();
+	for (int k = 0; k < arity; k++)
+	    lit.args.add(table[in.getInt()]);
+	return (lit);
+    }
+
+
+}
@@ -0,0 +1,349 @@
+//
+// KBParser
+//
+// This class implements a fast reader for facts and rules, written as
+// S-expressions, as an alternative to the "read" methods of Literal, Term,
+// Function, and Rule, which work through a Scanner.  It accepts the same
+// syntax.  A symbol is any run of characters other than whitespace and
+// parentheses.  A term is a variable (a symbol starting with a question
+// mark), a function invocation (in parentheses), or a constant (any other
+// symbol).  A literal is a predicate name and argument terms, in
+// parentheses.  A rule is "(DEFRULE name antecedent ... => consequent)",
+// with the keyword in any case.  The input is a byte array, scanned once
+// by hand, and each symbol name is interned once per parser, with the
+// symbol objects then being shared by every term that mentions them.  As
+// with the Scanner based readers, reading stops quietly at the first
+// malformed expression.  A large input can be parsed in parallel:  it is
+// first cut into chunks at the ends of top-level expressions, and each
+// chunk is parsed by its own parser, with the results joined in order.
+//
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+public class KBParser {
+
+    byte[] buf;
+    int pos;
+    int end;
+    public boolean failed;     // stopped at a malformed expression
+    // Symbols already made by this parser, by name ...
+    Map<String, Constant> constants;
+    Map<String, Variable> variables;
+    Map<String, Predicate> predicates;
+    Map<String, FunctionName> functions;
+
+    // Constructor for a whole buffer ...
+    public KBParser(byte[] buf) {
+	this(buf, 0, buf.length);
+    }
+
+    // Constructor for a part of a buffer ...
+    public KBParser(byte[] buf, int start, int end) {
+	this.buf = buf;
+	this.pos = start;
+	this.end = end;
+	this.failed = false;
+	this.constants = new HashMap<String, Constant>();
+	this.variables = new HashMap<String, Variable>();
+	this.predicates = new HashMap<String, Predicate>();
+	this.functions = new HashMap<String, FunctionName>();
+    }
+
+    // readFile -- Return the contents of the named file.
+    public static byte[] readFile(String filename) throws IOException {
+	return (java.nio.file.Files.readAllBytes(new File(filename).toPath()));
+    }
+
+    // isSpace -- Return true for the characters matched by "\s".
+    static boolean isSpace(byte b) {
+	return ((b == ' ') || (b == '\t') || (b == '\n') || (b == '\r')
+		|| (b == '\f') || (b == 0x0B));
+    }
+
+    // skipSpace -- Advance past any whitespace, returning false at the end
+    // of the input.
+    boolean skipSpace() {
+	while ((pos < end) && isSpace(buf[pos]))
+	    pos++;
+	return (pos < end);
+    }
+
+    // symbol -- Read the next symbol, ending at whitespace or a
+    // parenthesis, or return null if there is none.
+    String symbol() {
+	int start = pos;
+	while ((pos < end) && !isSpace(buf[pos])
+	       && (buf[pos] != '(') && (buf[pos] != ')'))
+	    pos++;
+	if (pos == start)
+	    return (null);
+	return (new String(buf, start, pos - start));
+    }
+
+    // word -- Read the next whitespace delimited word, or return null if
+    // there is none.
+    String word() {
+	if (!skipSpace())
+	    return (null);
+	int start = pos;
+	while ((pos < end) && !isSpace(buf[pos]))
+	    pos++;
+	return (new String(buf, start, pos - start));
+    }
+
+    // expect -- Skip whitespace and the given character, returning false
+    // if it is not next.
+    boolean expect(char ch) {
+	if (!skipSpace() || (buf[pos] != ch))
+	    return (false);
+	pos++;
+	return (true);
+    }
+
+    Constant constant(String name) {
+	Constant c = constants.get(name);
+	if (c == null) {
+	    c = new Constant(name);
+	    constants.put(name, c);
+	}
+	return (c);
+    }
+
+    Variable variable(String name) {
+	Variable v = variables.get(name);
+	if (v == null) {
+	    v = new Variable(name);
+	    variables.put(name, v);
+	}
+	return (v);
+    }
+
+    Predicate predicate(String name) {
+	Predicate p = predicates.get(name);
+	if (p == null) {
+	    p = new Predicate(name);
+	    predicates.put(name, p);
+	}
+	return (p);
+    }
+
+    FunctionName function(String name) {
+	FunctionName f = functions.get(name);
+	if (f == null) {
+	    f = new FunctionName(name);
+	    functions.put(name, f);
+	}
+	return (f);
+    }
+
+    // parseTerm -- Read a term, or return null on error.
+    public Term parseTerm() {
+	if (!skipSpace())
+	    return (null);
+	if (buf[pos] == '(') {
+	    // The next item is a function invocation ...
+	    pos++;
+	    skipSpace();
+	    String name = symbol();
+	    if (name == null)
+		return (null);
+	    Function f = new Function(function(name));
+	    if (!parseArguments(f.args))
+		return (null);
+	    return (new Term(f));
+	}
+	String name = symbol();
+	if (name == null)
+	    return (null);
+	if (name.charAt(0) == '?')
+	    return (new Term(variable(name)));
+	return (new Term(constant(name)));
+    }
+
+    // parseArguments -- Read terms into the given list, up to and including
+    // a closing parenthesis.  Return false on error.
+    boolean parseArguments(List<Term> args) {
+	while (true) {
+	    if (!skipSpace())
+		return (false);
+	    if (buf[pos] == ')') {
+		pos++;
+		return (true);
+	    }
+	    Term arg = parseTerm();
+	    if (arg == null)
+		return (false);
+	    args.add(arg);
+	}
+    }
+
+    // parseLiteral -- Read a literal, or return null on error.
+    public Literal parseLiteral() {
+	if (!expect('('))
+	    return (null);
+	skipSpace();
+	String name = symbol();
+	if (name == null)
+	    return (null);
+	Literal lit = new Literal(predicate(name));
+	if (!parseArguments(lit.args))
+	    return (null);
+	return (lit);
+    }
+
+    // parseRule -- Read a rule, or return null on error.
+    public Rule parseRule() {
+	if (!expect('('))
+	    return (null);
+	String keyword = word();
+	if ((keyword == null) || !keyword.toUpperCase().equals("DEFRULE"))
+	    return (null);
+	Rule r = new Rule();
+	r.name = word();
+	if (r.name == null)
+	    return (null);
+	// Read antecedents, up to the arrow ...
+	while (true) {
+	    if (!skipSpace())
+		return (null);
+	    if ((buf[pos] == '=') && (pos + 1 < end) && (buf[pos + 1] == '>'))
+		break;
+	    Literal ante = parseLiteral();
+	    if (ante == null)
+		return (null);
+	    r.antecedents.add(ante);
+	}
+	pos += 2;
+	r.consequent = parseLiteral();
+	if ((r.consequent == null) || !expect(')'))
+	    return (null);
+	return (r);
+    }
+
+    // parseLiterals -- Read literals until the end of the input, or until
+    // a malformed one.
+    public List<Literal> parseLiterals() {
+	List<Literal> result = new ArrayList<Literal>();
+	while (skipSpace()) {
+	    Literal lit = parseLiteral();
+	    if (lit == null) {
+		failed = true;
+		break;
+	    }
+	    result.add(lit);
+	}
+	return (result);
+    }
+
+    // parseRules -- Read rules until the end of the input, or until a
+    // malformed one.
+    public List<Rule> parseRules() {
+	List<Rule> result = new ArrayList<Rule>();
+	while (skipSpace()) {
+	    Rule r = parseRule();
+	    if (r == null) {
+		failed = true;
+		break;
+	    }
+	    result.add(r);
+	}
+	return (result);
+    }
+
+    // split -- Return the boundaries of at most the given number of chunks
+    // of the given buffer, each ending at the end of a top-level
+    // expression.
+    static int[] split(byte[] buf, int parts) {
+	List<Integer> bounds = new ArrayList<Integer>();
+	bounds.add(0);
+	int target = buf.length / parts;
+	int depth = 0;
+	for (int i = 0; i < buf.length; i++) {
+	    if (buf[i] == '(') {
+		depth++;
+	    } else if ((buf[i] == ')') && (depth > 0)) {
+		depth--;
+		if ((depth == 0)
+		    && (i + 1 - bounds.get(bounds.size() - 1) >= target)
+		    && (bounds.size() < parts))
+		    bounds.add(i + 1);
+	    }
+	}
+	if (bounds.get(bounds.size() - 1) < buf.length)
+	    bounds.add(buf.length);
+	int[] result = new int[bounds.size()];
+	for (int i = 0; i < result.length; i++)
+	    result[i] = bounds.get(i);
+	return (result);
+    }
+
+    // parseChunks -- Parse the chunks of the given buffer in parallel,
+    // returning their results, in order.
+    static List<Future<List<?>>> parseChunks(byte[] buf, int parts,
+					     final boolean rules) {
+	final int[] bounds = split(buf, parts);
+	final byte[] data = buf;
+	List<Callable<List<?>>> tasks = new ArrayList<Callable<List<?>>>();
+	for (int i = 0; i + 1 < bounds.length; i++) {
+	    final int start = bounds[i];
+	    final int stop = bounds[i + 1];
+	    tasks.add(new Callable<List<?>>() {
+		    public List<?> call() {
+			KBParser p = new KBParser(data, start, stop);
+			List<?> items = rules ? p.parseRules() : p.parseLiterals();
+			// A null marks the place where a chunk stopped early ...
+			if (p.failed) {
+			    List<Object> marked = new ArrayList<Object>(items);
+			    marked.add(null);
+			    return (marked);
+			}
+			return (items);
+		    }
+		});
+	}
+	return (ForkJoinPool.commonPool().invokeAll(tasks));
+    }
+
+    // join -- Append the results of the given chunks, in order, stopping
+    // at the first malformed expression.
+    @SuppressWarnings("unchecked")
+    static <T> List<T> join(List<Future<List<?>>> chunks) {
+	List<T> result = new ArrayList<T>();
+	try {
+	    for (Future<List<?>> chunk : chunks) {
+		for (Object item : chunk.get()) {
+		    if (item == null)
+			return (result);
+		    result.add((T) item);
+		}
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} catch (ExecutionException e) {
+	    throw new RuntimeException(e.getCause());
+	}
+	return (result);
+    }
+
+    // parseLiterals -- Read all of the literals in the given buffer, using
+    // the given number of parallel parsers.
+    public static List<Literal> parseLiterals(byte[] buf, int parts) {
+	if (parts <= 1)
+	    return (new KBParser(buf).parseLiterals());
+	return (KBParser.<Literal>join(parseChunks(buf, parts, false)));
+    }
+
+    // parseRules -- Read all of the rules in the given buffer, using the
+    // given number of parallel parsers.
+    public static List<Rule> parseRules(byte[] buf, int parts) {
+	if (parts <= 1)
+	    return (new KBParser(buf).parseRules());
+	return (KBParser.<Rule>join(parseChunks(buf, parts, true)));
+    }
+
+
+}
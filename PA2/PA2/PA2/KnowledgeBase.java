@@ -9,7 +9,39 @@
 // class includes methods for prompting the user for these file names, storing
 // them in the object, and reading collections of facts and rules from
 // the corresponding files.  The top-level function for reading a knowledge
-// base from user-specified files is called "readKB".
+// base from user-specified files is called "readKB".  Files are read with
+// the hand-written KBParser, in parallel for large files.  A loaded
+// knowledge base can also be saved as a binary image, which is much faster
+// to restore (see KBImage).
+//
+// In order to avoid scanning every fact and every rule for each subgoal,
+// the knowledge base also maintains indexes.  Facts and rules are indexed
+// by predicate name, and discrimination trees over the structure of facts
+// and of rule consequents are used to find the candidates that could
+// possibly unify with a given goal.  These indexes are kept up to date by
+// "addFact" and "addRule", which should be used in place of adding
+// directly to the "facts" and "rules" lists.  Facts added in this way also
+// have their ground terms shared through a hash-consing term store.  Facts
+// and rules may also be removed, with "removeFact" and "removeRule".  Each
+// predicate has a version number, which changes whenever a fact or a rule
+// concluding that predicate is added or removed, so that results computed
+// from the knowledge base can tell when they have become stale.
+//
+// The knowledge base can be changed while queries are running, using
+// "assertFact", "retractFact", "addRule", and "removeRule" (or the other
+// methods that add and remove facts and rules, which are the same).
+// Changes are made one at a time, each under the lock of the knowledge
+// base, and each produces a new version of it.  A query reads a snapshot:
+// it takes the current version when it starts, with "openSnapshot", and
+// asks the indexes only for the facts and rules live at that version, so
+// it is not disturbed by later changes, and it never waits for a writer.
+// A removed fact or rule stays in the indexes, hidden from later
+// versions, until no open snapshot can still see it, and it is then
+// purged by the next change.  The plain "facts" and "rules" lists, and
+// the lists of facts by predicate, only hold the latest version, and
+// should only be read while holding the lock of the knowledge base, or
+// while no changes are being made.  The number of facts of each predicate
+// is also kept, and it may be read at any time, without the lock.
 //
 // David Noelle -- Tue Apr 10 17:08:45 PDT 2007
 //
@@ -17,19 +49,47 @@
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 
 public class KnowledgeBase {
 
+    // Files at least this large are parsed in parallel ...
+    static final int PARALLEL_PARSE_BYTES = 1 << 20;
+
     String factsFilename = "facts.dat";
     String rulesFilename = "rules.dat";
     public List<Literal> facts;
     public List<Rule> rules;
+    // Indexes over facts and rules ...
+    Map<String, List<Literal>> factsByPred;
+    Map<String, List<Rule>> rulesByPred;
+    Map<String, AtomicInteger> factCounts;
+    DiscriminationTree<Literal> factTree;
+    DiscriminationTree<Rule> ruleTree;
+    public TermStore terms;
+    // Versions of predicates, and of the knowledge base as a whole ...
+    Map<String, Long> versions;
+    public volatile long modifications;
+    public volatile long ruleModifications;
+    // Counts of the queries reading each version ...
+    TreeMap<Long, Integer> snapshots;
 
     // Default constructor ...
     public KnowledgeBase() {
 	this.facts = new ArrayList<Literal>();
 	this.rules = new ArrayList<Rule>();
+	this.factsByPred = new ConcurrentHashMap<String, List<Literal>>();
+	this.rulesByPred = new ConcurrentHashMap<String, List<Rule>>();
+	this.factCounts = new ConcurrentHashMap<String, AtomicInteger>();
+	this.factTree = new DiscriminationTree<Literal>();
+	this.ruleTree = new DiscriminationTree<Rule>();
+	this.terms = new TermStore();
+	this.versions = new ConcurrentHashMap<String, Long>();
+	this.modifications = 0;
+	this.ruleModifications = 0;
+	this.snapshots = new TreeMap<Long, Integer>();
     }
 
     // Constructor with filenames specified ...
@@ -74,6 +134,225 @@ public class KnowledgeBase {
 	return (true);
     }
 
+    // addFact -- Add the given fact to the knowledge base, updating the
+    // fact indexes.  Ground arguments of the fact are replaced by shared
+    // terms.
+    public synchronized void addFact(Literal fact) {
+	terms.intern(fact);
+	facts.add(fact);
+	List<Literal> predFacts = factsByPred.get(fact.pred.name);
+	if (predFacts == null) {
+	    predFacts = new ArrayList<Literal>();
+	    factsByPred.put(fact.pred.name, predFacts);
+	}
+	predFacts.add(fact);
+	AtomicInteger count = factCounts.get(fact.pred.name);
+	if (count == null) {
+	    count = new AtomicInteger();
+	    factCounts.put(fact.pred.name, count);
+	}
+	count.incrementAndGet();
+	factTree.insert(fact, fact, modifications + 1);
+	changed(fact.pred.name);
+    }
+
+    // addRule -- Add the given rule to the knowledge base, updating the
+    // rule index.
+    public synchronized void addRule(Rule r) {
+	// Number the variables now, before readers share the rule ...
+	r.numberVariables();
+	rules.add(r);
+	List<Rule> predRules = rulesByPred.get(r.consequent.pred.name);
+	if (predRules == null) {
+	    predRules = new CopyOnWriteArrayList<Rule>();
+	    rulesByPred.put(r.consequent.pred.name, predRules);
+	}
+	predRules.add(r);
+	ruleTree.insert(r.consequent, r, modifications + 1);
+	ruleModifications++;
+	changed(r.consequent.pred.name);
+    }
+
+    // removeFact -- Remove the first fact equal to the given one from the
+    // knowledge base, updating the fact indexes.  Return false if there is
+    // no such fact.
+    public synchronized boolean removeFact(Literal fact) {
+	List<Literal> predFacts = factsByPred.get(fact.pred.name);
+	if (predFacts == null)
+	    return (false);
+	for (int i = 0; i < predFacts.size(); i++) {
+	    Literal stored = predFacts.get(i);
+	    if (stored.equals(fact)) {
+		predFacts.remove(i);
+		factCounts.get(fact.pred.name).decrementAndGet();
+		removeIdentical(facts, stored);
+		factTree.retire(stored, stored, modifications + 1);
+		changed(fact.pred.name);
+		return (true);
+	    }
+	}
+	return (false);
+    }
+
+    // removeRule -- Remove the first rule equal to the given one from the
+    // knowledge base, updating the rule indexes.  Return false if there is
+    // no such rule.
+    public synchronized boolean removeRule(Rule r) {
+	List<Rule> predRules = rulesByPred.get(r.consequent.pred.name);
+	if (predRules == null)
+	    return (false);
+	for (int i = 0; i < predRules.size(); i++) {
+	    Rule stored = predRules.get(i);
+	    if (stored.equals(r)) {
+		predRules.remove(i);
+		removeIdentical(rules, stored);
+		ruleTree.retire(stored.consequent, stored, modifications + 1);
+		ruleModifications++;
+		changed(r.consequent.pred.name);
+		return (true);
+	    }
+	}
+	return (false);
+    }
+
+    // assertFact -- Add the given fact to the knowledge base, as a new
+    // version of it.
+    public void assertFact(Literal fact) {
+	addFact(fact);
+    }
+
+    // retractFact -- Remove the first fact equal to the given one from the
+    // knowledge base, as a new version of it.  Return false if there is no
+    // such fact.
+    public boolean retractFact(Literal fact) {
+	return (removeFact(fact));
+    }
+
+    // removeIdentical -- Remove the given object from the given list,
+    // comparing by identity.
+    static <T> void removeIdentical(List<T> list, T item) {
+	for (int i = list.size() - 1; i >= 0; i--) {
+	    if (list.get(i) == item) {
+		list.remove(i);
+		return;
+	    }
+	}
+    }
+
+    // changed -- Record a change to the facts or rules for the given
+    // predicate, making a new version of the knowledge base, and purge the
+    // removed facts and rules that can no longer be seen.
+    void changed(String pred) {
+	versions.put(pred, modifications + 1);
+	modifications++;
+	long oldest;
+	synchronized (snapshots) {
+	    oldest = snapshots.isEmpty() ? modifications : snapshots.firstKey();
+	}
+	factTree.purge(oldest);
+	ruleTree.purge(oldest);
+    }
+
+    // openSnapshot -- Return the current version of the knowledge base,
+    // keeping the facts and rules live at that version from being purged
+    // until the snapshot is closed.
+    public long openSnapshot() {
+	synchronized (snapshots) {
+	    long version = modifications;
+	    Integer count = snapshots.get(version);
+	    snapshots.put(version, (count == null) ? 1 : count + 1);
+	    return (version);
+	}
+    }
+
+    // closeSnapshot -- Release a snapshot returned by "openSnapshot".
+    public void closeSnapshot(long version) {
+	synchronized (snapshots) {
+	    Integer count = snapshots.get(version);
+	    if (count == null)
+		return;
+	    if (count == 1)
+		snapshots.remove(version);
+	    else
+		snapshots.put(version, count - 1);
+	}
+    }
+
+    // version -- Return the version of the given predicate, which changes
+    // whenever a fact or rule for it is added or removed.
+    public long version(String pred) {
+	Long v = versions.get(pred);
+	return ((v == null) ? 0 : v);
+    }
+
+    // factCount -- Return the number of facts of the given predicate.  This
+    // may be read while changes are being made, without the lock.
+    public int factCount(String pred) {
+	AtomicInteger count = factCounts.get(pred);
+	return ((count == null) ? 0 : count.get());
+    }
+
+    // dependencies -- Return the names of the predicates that a proof of
+    // the given predicate might use:  the predicate itself, and those of
+    // the antecedents of its rules, and so on.
+    public Set<String> dependencies(String pred) {
+	Set<String> found = new LinkedHashSet<String>();
+	Deque<String> open = new ArrayDeque<String>();
+	found.add(pred);
+	open.push(pred);
+	while (!open.isEmpty()) {
+	    List<Rule> predRules = rulesByPred.get(open.pop());
+	    if (predRules == null)
+		continue;
+	    for (Rule r : predRules)
+		for (Literal ante : r.antecedents)
+		    if (found.add(ante.pred.name))
+			open.push(ante.pred.name);
+	}
+	return (found);
+    }
+
+    // candidateFacts -- Return the facts that could possibly unify with
+    // the given goal literal, under the given binding list, in knowledge
+    // base order.  Only facts that are structurally compatible with the
+    // goal, according to the discrimination tree, are returned.
+    public List<Literal> candidateFacts(Literal goal, BindingList bl) {
+	return (factTree.retrieve(goal, bl, modifications));
+    }
+
+    // candidateFacts -- Return the facts live at the given version that
+    // could possibly unify with the given goal literal.
+    public List<Literal> candidateFacts(Literal goal, BindingList bl,
+					long version) {
+	return (factTree.retrieve(goal, bl, version));
+    }
+
+    // candidateRules -- Return the rules whose consequents could possibly
+    // unify with the given goal literal, under the given binding list, in
+    // knowledge base order.
+    public List<Rule> candidateRules(Literal goal, BindingList bl) {
+	return (ruleTree.retrieve(goal, bl, modifications));
+    }
+
+    // candidateRules -- Return the rules live at the given version whose
+    // consequents could possibly unify with the given goal literal.
+    public List<Rule> candidateRules(Literal goal, BindingList bl,
+				     long version) {
+	return (ruleTree.retrieve(goal, bl, version));
+    }
+
+    // liveFacts -- Return all of the facts live at the given version, in
+    // knowledge base order.
+    public List<Literal> liveFacts(long version) {
+	return (factTree.all(version));
+    }
+
+    // liveRules -- Return all of the rules live at the given version, in
+    // knowledge base order.
+    public List<Rule> liveRules(long version) {
+	return (ruleTree.all(version));
+    }
+
     // readFacts -- Attempt to open the facts file specified by the
     // appropriate pathname stored in this KnowledgeBase object.  If this 
     // file can be opened for reading, read a collection of facts from this 
@@ -82,22 +361,11 @@ public class KnowledgeBase {
 	try {
 	    File factFile = new File(factsFilename);
 	    if (factFile.exists() && factFile.canRead()) {
-		FileInputStream factFileIn = new FileInputStream(factFile);
-		InputStreamReader factISReader 
-		    = new InputStreamReader(factFileIn);
-		BufferedReader factBufferedReader
-
-		    = new BufferedReader(factISReader);
-		Scanner factScanner
-		    = new Scanner(factBufferedReader);
-		// Allocate storage for the first fact to be read ...
-		Literal fact = new Literal();
-		while (fact.read(factScanner)) {
+		byte[] contents = KBParser.readFile(factsFilename);
+		for (Literal fact : KBParser.parseLiterals(contents,
+							   parsers(contents)))
 		    // Record the fact in the knowledge base ...
-		    facts.add(fact);
-		    // Allocate storage for the next fact ...
-		    fact = new Literal();
-		}
+		    addFact(fact);
 		return (true);
 	    } else {
 		// The file cannot be read ...
@@ -117,22 +385,10 @@ public class KnowledgeBase {
 	try {
 	    File ruleFile = new File(rulesFilename);
 	    if (ruleFile.exists() && ruleFile.canRead()) {
-		FileInputStream ruleFileIn = new FileInputStream(ruleFile);
-		InputStreamReader ruleISReader 
-		    = new InputStreamReader(ruleFileIn);
-		BufferedReader ruleBufferedReader
-
-		    = new BufferedReader(ruleISReader);
-		Scanner ruleScanner
-		    = new Scanner(ruleBufferedReader);
-		// Allocate storage for the first rule to be read ...
-		Rule r = new Rule();
-		while (r.read(ruleScanner)) {
+		byte[] contents = KBParser.readFile(rulesFilename);
+		for (Rule r : KBParser.parseRules(contents, parsers(contents)))
 		    // Record the rule in the knowledge base ...
-		    rules.add(r);
-		    // Allocate storage for the next rule ...
-		    r = new Rule();
-		}
+		    addRule(r);
 		return (true);
 	    } else {
 		// The file cannot be read ...
@@ -144,6 +400,27 @@ public class KnowledgeBase {
 	}
     }
 
+    // writeImage -- Write a binary image of this knowledge base to the
+    // named file, to be restored later with "readImage".  Return false on
+    // error.
+    public boolean writeImage(String filename) {
+	return (KBImage.write(this, filename));
+    }
+
+    // readImage -- Add the facts and rules in the binary image in the
+    // named file to this knowledge base.  Return false on error.
+    public boolean readImage(String filename) {
+	return (KBImage.read(this, filename));
+    }
+
+    // parsers -- Return the number of parallel parsers to use for the
+    // given file contents.  Small files are parsed sequentially.
+    static int parsers(byte[] contents) {
+	if (contents.length < PARALLEL_PARSE_BYTES)
+	    return (1);
+	return (Runtime.getRuntime().availableProcessors());
+    }
+
     // readKB -- Prompt the user for the pathnames of a facts file and a
     // rules file, and then read those files into this KnowledgeBase object.
     // Return false on error.
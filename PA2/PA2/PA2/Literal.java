@@ -6,7 +6,8 @@
 // Methods are provided for identifying all of the variables in a given
 // literal (including those appearing deep within function arguments) and 
 // for substituting variables with their corresponding values, according to
-// a given binding list.
+// a given binding list.  Substitution shares ground arguments, and ground
+// literals, rather than copying them.
 //
 // David Noelle -- Tue Apr 10 17:08:45 PDT 2007
 //
@@ -27,6 +28,12 @@ public class Literal {
 	this.args = new ArrayList<Term>();
     }
 
+    // Constructor for a given predicate, with no arguments yet ...
+    public Literal(Predicate pred) {
+	this.pred = pred;
+	this.args = new ArrayList<Term>();
+    }
+
     // equals -- Return true if and only if this literal is the same as the 
     // given literal argument.
     public boolean equals(Literal lit) {
@@ -40,6 +47,15 @@ public class Literal {
 	return (true);
     }
 
+    // isGround -- Return true if and only if no variables appear in the
+    // arguments of this literal.
+    public boolean isGround() {
+	for (Term arg : args)
+	    if (!arg.isGround())
+		return (false);
+	return (true);
+    }
+
     // allVariables -- Return a set of all the variables in this function.
     public Set<Variable> allVariables() {
 	Set<Variable> allVs = new HashSet<Variable>();
@@ -49,9 +65,12 @@ public class Literal {
 	return (allVs);
     }
 
-    // subst -- Return a new Literal object that is the result of applying
-    // the given binding list to this literal.  Return null on error.
+    // subst -- Return a Literal object that is the result of applying
+    // the given binding list to this literal.  A ground literal is returned
+    // as it is.  Return null on error.
     public Literal subst(BindingList bl) {
+	if (isGround())
+	    return (this);
 	Literal result = new Literal();
 	result.pred = pred;
 	for (Term arg : args) {
@@ -60,6 +79,28 @@ public class Literal {
 	return (result);
     }
 
+    // variantKey -- Return a textual key for this literal, after applying
+    // the given binding list (which may be null).  Two literals have the
+    // same key if and only if they are variants of each other, identical
+    // up to a consistent renaming of variables.
+    public String variantKey(BindingList bl) {
+	StringBuilder key = new StringBuilder();
+	Map<Integer, Integer> varNumbers = new HashMap<Integer, Integer>();
+	key.append('(').append(pred.name);
+	for (Term arg : args) {
+	    key.append(' ');
+	    arg.appendVariantKey(key, bl, varNumbers);
+	}
+	key.append(')');
+	return (key.toString());
+    }
+
+    // variantKey -- Return a textual key for this literal that is shared
+    // by all of its variants.
+    public String variantKey() {
+	return (variantKey(null));
+    }
+
     // read -- Read a literal from the given scanner, filling in this object
     // with the results.  Return false on error.
     public boolean read(Scanner inScanner) {
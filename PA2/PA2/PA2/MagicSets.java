@@ -0,0 +1,219 @@
+//
+// MagicSets
+//
+// This class answers queries by the magic sets method:  the rules of the
+// knowledge base are rewritten for a particular query, and the rewritten
+// program is evaluated bottom-up (see Datalog), so that only facts relevant
+// to the constants in the query are derived.  Each predicate defined by
+// rules is "adorned" with a pattern of bound (b) and free (f) arguments,
+// starting from the query, whose constant arguments are bound.  Within a
+// rule for an adorned predicate, the antecedents are taken left to right,
+// and an argument of an antecedent is bound if it is a constant or a
+// variable that is bound in the consequent or appears in an earlier
+// antecedent.  A "magic" predicate for each adorned predicate holds the
+// bound arguments of the goals that a top-down search would pose for it.
+// Each rule is guarded by the magic predicate of its consequent, and each
+// antecedent defined by rules gets a magic rule, deriving its goals from
+// the magic fact of the consequent and the antecedents before it.  The
+// query itself seeds its magic predicate.  Adorned predicates with no
+// bound arguments need no magic predicate, and are computed in full.
+// Predicates with facts as well as rules get a rule that copies their
+// facts into each of their adorned versions.  Only the facts of the
+// predicates that the rewritten program uses are loaded.  Adorned and
+// magic predicates are named with "@" separators, as in "magic@Anc@bf".
+// Like Datalog, this only applies to knowledge bases without function
+// symbols.
+//
+
+
+import java.util.*;
+
+
+public class MagicSets {
+
+    public KnowledgeBase kb;
+    public List<Rule> rules;       // the rewritten rules, for the last query
+    public List<Literal> facts;    // the facts used, with the magic seeds
+    public Literal goal;           // the query, adorned
+    public Datalog datalog;        // the evaluation of the last query
+    Set<String> defined;           // predicates with rules
+    Set<String> scheduled;         // adorned predicates already rewritten
+    Deque<String[]> pending;       // adorned predicates to be rewritten
+
+    // Constructor ...
+    public MagicSets(KnowledgeBase kb) {
+	this.kb = kb;
+	this.rules = new ArrayList<Rule>();
+	this.facts = new ArrayList<Literal>();
+	this.goal = null;
+	this.datalog = null;
+    }
+
+    // adornment -- Return the pattern of bound and free arguments of the
+    // given literal, given the bound variables.
+    static String adornment(Literal lit, Set<Variable> bound) {
+	StringBuilder result = new StringBuilder();
+	for (Term arg : lit.args) {
+	    boolean b = (arg.c != null) || ((arg.v != null) && bound.contains(arg.v));
+	    result.append(b ? 'b' : 'f');
+	}
+	return (result.toString());
+    }
+
+    // free -- Return true if the given adornment has no bound arguments.
+    static boolean free(String adornment) {
+	return (adornment.indexOf('b') < 0);
+    }
+
+    // adorned -- Return the given literal, with its predicate adorned.
+    static Literal adorned(Literal lit, String adornment) {
+	Literal result = new Literal(new Predicate(lit.pred.name + "@"
+						   + adornment));
+	result.args.addAll(lit.args);
+	return (result);
+    }
+
+    // magic -- Return the magic literal for the given literal, holding its
+    // bound arguments.
+    static Literal magic(Literal lit, String adornment) {
+	Literal result = new Literal(new Predicate("magic@" + lit.pred.name
+						   + "@" + adornment));
+	for (int i = 0; i < lit.args.size(); i++)
+	    if (adornment.charAt(i) == 'b')
+		result.args.add(lit.args.get(i));
+	return (result);
+    }
+
+    // schedule -- Arrange for the rules of the given predicate to be
+    // rewritten for the given adornment, if they have not been already.
+    void schedule(String pred, String adornment) {
+	if (scheduled.add(pred + "@" + adornment))
+	    pending.add(new String[] { pred, adornment });
+    }
+
+    // rewrite -- Rewrite the rules of the knowledge base for the given
+    // query, filling in "rules", "facts", and "goal".  Return false if the
+    // result is not a Datalog program.
+    public boolean rewrite(Literal query) {
+	rules = new ArrayList<Rule>();
+	facts = new ArrayList<Literal>();
+	defined = new HashSet<String>();
+	scheduled = new HashSet<String>();
+	pending = new ArrayDeque<String[]>();
+	for (Term arg : query.args)
+	    if (arg.f != null)
+		return (false);
+	Set<String> used = new LinkedHashSet<String>();
+	// Hold off changes to the knowledge base while reading it ...
+	synchronized (kb) {
+	    for (Map.Entry<String, List<Rule>> e : kb.rulesByPred.entrySet())
+		if (!e.getValue().isEmpty())
+		    defined.add(e.getKey());
+	    if (!defined.contains(query.pred.name)) {
+		// There is nothing to rewrite ...
+		goal = query;
+		used.add(query.pred.name);
+	    } else {
+		String adornment = adornment(query, new HashSet<Variable>());
+		goal = adorned(query, adornment);
+		if (!free(adornment))
+		    facts.add(magic(query, adornment));
+		schedule(query.pred.name, adornment);
+	    }
+	    while (!pending.isEmpty()) {
+		String[] next = pending.removeFirst();
+		for (Rule r : kb.rulesByPred.get(next[0]))
+		    if (r.consequent.args.size() == next[1].length())
+			rewriteRule(r, next[1], used);
+		List<Literal> predFacts = kb.factsByPred.get(next[0]);
+		if ((predFacts != null) && !predFacts.isEmpty())
+		    copyFacts(next[0], next[1], used);
+	    }
+	    for (String pred : used) {
+		List<Literal> predFacts = kb.factsByPred.get(pred);
+		if (predFacts != null)
+		    facts.addAll(predFacts);
+	    }
+	}
+	return (Datalog.isDatalog(facts, rules));
+    }
+
+    // rewriteRule -- Add the rewritten versions of the given rule, for the
+    // given adornment of its consequent, noting the predicates without
+    // rules that they use.
+    void rewriteRule(Rule r, String adornment, Set<String> used) {
+	Set<Variable> bound = new HashSet<Variable>();
+	for (int i = 0; i < adornment.length(); i++) {
+	    Term arg = r.consequent.args.get(i);
+	    if ((adornment.charAt(i) == 'b') && (arg.v != null))
+		bound.add(arg.v);
+	}
+	List<Literal> body = new ArrayList<Literal>();
+	if (!free(adornment))
+	    body.add(magic(r.consequent, adornment));
+	for (Literal ante : r.antecedents) {
+	    if (defined.contains(ante.pred.name)) {
+		String sub = adornment(ante, bound);
+		schedule(ante.pred.name, sub);
+		if (!free(sub)) {
+		    // The goals posed for this antecedent ...
+		    Literal goals = magic(ante, sub);
+		    if (body.isEmpty()) {
+			facts.add(goals);
+		    } else {
+			Rule m = new Rule();
+			m.name = "magic@" + r.name + "@" + adornment;
+			m.consequent = goals;
+			m.antecedents = new ArrayList<Literal>(body);
+			rules.add(m);
+		    }
+		}
+		body.add(adorned(ante, sub));
+	    } else {
+		used.add(ante.pred.name);
+		body.add(ante);
+	    }
+	    bound.addAll(ante.allVariables());
+	}
+	Rule modified = new Rule();
+	modified.name = r.name + "@" + adornment;
+	modified.consequent = adorned(r.consequent, adornment);
+	modified.antecedents = body;
+	rules.add(modified);
+    }
+
+    // copyFacts -- Add a rule that copies the facts for the given
+    // predicate, which also has rules, into its given adornment.
+    void copyFacts(String pred, String adornment, Set<String> used) {
+	Literal stored = new Literal(new Predicate(pred));
+	for (int i = 0; i < adornment.length(); i++)
+	    stored.args.add(new Term(new Variable("?arg" + i)));
+	Rule copy = new Rule();
+	copy.name = "facts@" + pred + "@" + adornment;
+	copy.consequent = adorned(stored, adornment);
+	if (!free(adornment))
+	    copy.antecedents.add(magic(stored, adornment));
+	copy.antecedents.add(stored);
+	rules.add(copy);
+	used.add(pred);
+    }
+
+    // ask -- Return binding lists for all of the answers to the given
+    // query, or null if the magic sets method does not apply to it.
+    public List<BindingList> ask(Literal query) {
+	if (!rewrite(query))
+	    return (null);
+	datalog = new Datalog(kb);
+	if (!datalog.evaluate(facts, rules))
+	    return (null);
+	return (datalog.query(goal));
+    }
+
+    // derived -- Return the number of tuples held after evaluating the
+    // last query, including the facts used.
+    public long derived() {
+	return ((datalog == null) ? 0 : datalog.tupleCount());
+    }
+
+
+}
@@ -0,0 +1,191 @@
+//
+// ParallelChain
+//
+// This class implements OR-parallel backward chaining.  The alternative
+// ways of proving the first goal of a query (each matching fact, and each
+// rule whose consequent unifies with the goal) are explored as separate
+// tasks on a fork/join pool, each with its own copy of the binding list.
+// A task that has not yet reached the splitting depth splits again on the
+// alternatives for the first of its own goals, and deeper tasks search
+// sequentially, using AnswerIterator.  Tasks share nothing but a snapshot
+// of the knowledge base, which later changes do not disturb, and the
+// counter used to make novel variables, which is thread safe.  Two modes are
+// provided.  "ask" returns the first proof found by any task, and then
+// cancels the rest.  Which proof is found first depends on scheduling, so
+// it may differ from the first proof found by BackwardChain.  "askAll"
+// waits for every task and merges the proofs in the order of the
+// alternatives, which is the order in which BackwardChain finds them.  As
+// with BackwardChain, recursive rules can produce an endless search.
+//
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+public class ParallelChain extends BackwardChain {
+
+    public ForkJoinPool pool;
+    public int splitDepth;     // number of goals split into parallel tasks
+
+    // The state shared by all of the tasks of a single query ...
+    static class Search {
+	boolean firstOnly;
+	long snapshot;
+	AtomicBoolean cancelled = new AtomicBoolean(false);
+	AtomicReference<BindingList> first = new AtomicReference<BindingList>();
+    }
+
+    // A task proving a list of goals under its own binding list ...
+    class OrTask extends RecursiveTask<List<BindingList>> {
+	private static final long serialVersionUID = 1L;
+
+	Search search;
+	List<Literal> goals;
+	BindingList bl;
+	int depth;
+
+	OrTask(Search search, List<Literal> goals, BindingList bl, int depth) {
+	    this.search = search;
+	    this.goals = goals;
+	    this.bl = bl;
+	    this.depth = depth;
+	}
+
+	// compute -- Return the proofs of the goals of this task.
+	protected List<BindingList> compute() {
+	    if (search.cancelled.get())
+		return (Collections.<BindingList>emptyList());
+	    if (goals.isEmpty())
+		return (found(Collections.singletonList(bl)));
+	    if (depth >= splitDepth)
+		return (found(sequential()));
+	    List<OrTask> tasks = split();
+	    invokeAll(tasks);
+	    List<BindingList> result = new ArrayList<BindingList>();
+	    for (OrTask t : tasks)
+		result.addAll(t.join());
+	    return (result);
+	}
+
+	// split -- Return a task for each alternative way of proving the
+	// first goal of this task.
+	List<OrTask> split() {
+	    Literal goal = goals.get(0);
+	    List<Literal> rest = goals.subList(1, goals.size());
+	    List<OrTask> tasks = new ArrayList<OrTask>();
+	    for (Literal fact : kb.candidateFacts(goal, bl, search.snapshot)) {
+		BindingList b = unify(goal, fact, new BindingList(bl));
+		if (b != null)
+		    tasks.add(new OrTask(search, rest, b, depth + 1));
+	    }
+	    for (Rule r : kb.candidateRules(goal, bl, search.snapshot)) {
+		Rule.Frame frame = r.newFrame();
+		BindingList b = unify(goal, r.renameConsequent(frame),
+				      new BindingList(bl));
+		if (b != null) {
+		    List<Literal> remaining
+			= new ArrayList<Literal>(r.renameAntecedents(frame));
+		    remaining.addAll(rest);
+		    tasks.add(new OrTask(search, remaining, b, depth + 1));
+		}
+	    }
+	    return (tasks);
+	}
+
+	// sequential -- Return the proofs of the goals of this task, found
+	// by a sequential search.  In the first proof mode, only one proof
+	// is sought.
+	List<BindingList> sequential() {
+	    AnswerIterator it = new AnswerIterator(ParallelChain.this, goals, bl,
+						   search.snapshot);
+	    it.cancelled = search.cancelled;
+	    List<BindingList> result = new ArrayList<BindingList>();
+	    while (it.hasNext()) {
+		result.add(it.next());
+		if (search.firstOnly)
+		    break;
+	    }
+	    it.close();
+	    return (result);
+	}
+
+	// found -- Report the given proofs, cancelling the other tasks if
+	// only the first proof is needed.
+	List<BindingList> found(List<BindingList> answers) {
+	    if (search.firstOnly && !answers.isEmpty()
+		&& search.first.compareAndSet(null, answers.get(0)))
+		search.cancelled.set(true);
+	    return (answers);
+	}
+    }
+
+    // Default constructor ...
+    public ParallelChain() {
+	super();
+	this.pool = ForkJoinPool.commonPool();
+	this.splitDepth = 2;
+    }
+
+    // Constructor for reasoning over an existing knowledge base ...
+    public ParallelChain(KnowledgeBase kb) {
+	super(kb);
+	this.pool = ForkJoinPool.commonPool();
+	this.splitDepth = 2;
+    }
+
+    // Constructor for reasoning on a given pool ...
+    public ParallelChain(KnowledgeBase kb, ForkJoinPool pool) {
+	super(kb);
+	this.pool = pool;
+	this.splitDepth = 2;
+    }
+
+    // run -- Search for proofs of the given goals in parallel.
+    Search run(List<Literal> goals, BindingList bl, boolean firstOnly,
+	       List<BindingList> out) {
+	Search search = new Search();
+	search.firstOnly = firstOnly;
+	search.snapshot = kb.openSnapshot();
+	List<BindingList> result;
+	try {
+	    result = pool.invoke(new OrTask(search, new ArrayList<Literal>(goals),
+					    new BindingList(bl), 0));
+	} finally {
+	    kb.closeSnapshot(search.snapshot);
+	}
+	if (out != null)
+	    out.addAll(result);
+	return (search);
+    }
+
+    // askAll -- Return all of the proofs of the given list of goal
+    // literals, under the constraints of the given binding list, in the
+    // order in which a sequential search would find them.
+    public List<BindingList> askAll(List<Literal> goals, BindingList bl) {
+	List<BindingList> result = new ArrayList<BindingList>();
+	run(goals, bl, false, result);
+	return (result);
+    }
+
+    // askAll -- Return all of the proofs of the given goal literal.
+    public List<BindingList> askAll(Literal goal) {
+	return (askAll(Collections.singletonList(goal), new BindingList()));
+    }
+
+    // ask -- Try to prove the given list of goal literals, under the
+    // constraints of the given binding list, exploring alternatives in
+    // parallel.  Return the first proof found, or null if there is none.
+    BindingList ask(List<Literal> goals, BindingList bl) {
+	return (run(goals, bl, true, null).first.get());
+    }
+
+    // ask -- Try to prove the given goal literal, under the constraints of
+    // the given binding list, exploring alternatives in parallel.
+    BindingList ask(Literal goal, BindingList bl) {
+	return (ask(Collections.singletonList(goal), bl));
+    }
+
+
+}
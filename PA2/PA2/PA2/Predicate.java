@@ -13,6 +13,16 @@ public class Predicate extends Symbol {
     static String gensymPrefix = "PRED-";
     static int gensymCounter = 1;
 
+    // Default constructor ...
+    public Predicate() {
+	super();
+    }
+
+    // Constructor with name specified ...
+    public Predicate(String name) {
+	super(name);
+    }
+
 
 }
 
@@ -0,0 +1,250 @@
+//
+// ProofProfiler
+//
+// This class collects a profile of the proof search done by BackwardChain
+// (through AnswerIterator).  For each predicate, it counts the attempts to
+// unify a goal with a fact, and how many of those failed.  For each rule,
+// by name, it counts the attempts to unify a goal with the consequent of
+// the rule, and how many of those failed.  It also builds a calling
+// context tree of the search:  the root stands for the query, below each
+// goal are the rules used to prove it, and below each rule are the goals
+// of its antecedents, each labelled by predicate.  The time taken by each
+// step of the search is charged to the goal being worked on, and the time
+// for a rule or a predicate is the total time spent beneath all of its
+// places in the tree (counting recursive uses only once).  The deepest
+// nesting of rules, and the largest number of choice points held at once,
+// are also recorded.  The tree can be written as "folded stacks", one line
+// per path with its time in nanoseconds, which is the input format of the
+// common flame graph tools.  Profiling is off unless a profiler is given
+// to a query (or to the engine, for all of its queries), and then costs
+// only a test for null at each step.  A profiler should not be shared by
+// queries running at the same time.
+//
+
+
+import java.io.*;
+import java.util.*;
+
+
+public class ProofProfiler {
+
+    // Counts for a predicate or a rule ...
+    public static class Counts {
+	public long attempts;
+	public long failures;
+	public long nanos;       // time spent beneath it in the search
+    }
+
+    // A node of the calling context tree, for a goal or a rule ...
+    public static class Node {
+	String label;
+	boolean rule;
+	Node parent;
+	int depth;               // number of rules on the path to this node
+	Map<String, Node> children;
+	long nanos;              // time spent at this node itself
+	long steps;
+
+	Node(String label, boolean rule, Node parent) {
+	    this.label = label;
+	    this.rule = rule;
+	    this.parent = parent;
+	    this.depth = (parent == null) ? 0 : parent.depth + (rule ? 1 : 0);
+	    this.children = null;
+	    this.nanos = 0;
+	    this.steps = 0;
+	}
+    }
+
+    public Map<String, Counts> predicates;
+    public Map<String, Counts> rules;
+    public int maxDepth;
+    public int maxChoicePoints;
+    public long steps;
+    Node root;
+    Node current;            // node charged for the time since "last"
+    long last;
+
+    // Default constructor ...
+    public ProofProfiler() {
+	this.predicates = new TreeMap<String, Counts>();
+	this.rules = new TreeMap<String, Counts>();
+	this.maxDepth = 0;
+	this.maxChoicePoints = 0;
+	this.steps = 0;
+	this.root = new Node("query", false, null);
+	this.current = null;
+	this.last = 0;
+    }
+
+    // counts -- Return the counts for the given name in the given table,
+    // making them if needed.
+    static Counts counts(Map<String, Counts> table, String name) {
+	Counts c = table.get(name);
+	if (c == null) {
+	    c = new Counts();
+	    table.put(name, c);
+	}
+	return (c);
+    }
+
+    // child -- Return the child of the given node (or of the root, if it
+    // is null) with the given label, making it if needed.
+    Node child(Node node, String label, boolean rule) {
+	if (node == null)
+	    node = root;
+	if (node.children == null)
+	    node.children = new HashMap<String, Node>();
+	Node next = node.children.get(label);
+	if (next == null) {
+	    next = new Node(label, rule, node);
+	    node.children.put(label, next);
+	    if (next.depth > maxDepth)
+		maxDepth = next.depth;
+	}
+	return (next);
+    }
+
+    // goalNode -- Return the node for a goal with the given predicate,
+    // below the given rule node (or the root).
+    Node goalNode(Node ruleNode, Literal goal) {
+	return (child(ruleNode, goal.pred.name, false));
+    }
+
+    // ruleNode -- Return the node for the given rule, used for the goal
+    // at the given node.
+    Node ruleNode(Node goalNode, Rule r) {
+	return (child(goalNode, r.name, true));
+    }
+
+    // step -- Record the start of a step of the search, working on the
+    // goal at the given node, with the given number of choice points.
+    void step(Node goalNode, int choicePoints) {
+	long now = System.nanoTime();
+	if (current != null)
+	    current.nanos += now - last;
+	current = goalNode;
+	last = now;
+	goalNode.steps++;
+	steps++;
+	if (choicePoints > maxChoicePoints)
+	    maxChoicePoints = choicePoints;
+    }
+
+    // pause -- Record the end of the current step, when the search stops.
+    void pause() {
+	if (current != null)
+	    current.nanos += System.nanoTime() - last;
+	current = null;
+    }
+
+    // fact -- Record an attempt to unify a goal with a fact.
+    void fact(Literal goal, boolean unified) {
+	Counts c = counts(predicates, goal.pred.name);
+	c.attempts++;
+	if (!unified)
+	    c.failures++;
+    }
+
+    // rule -- Record an attempt to unify a goal with the consequent of a
+    // rule.
+    void rule(Rule r, boolean unified) {
+	Counts c = counts(rules, r.name);
+	c.attempts++;
+	if (!unified)
+	    c.failures++;
+    }
+
+    // totals -- Fill in the time spent beneath each rule and predicate,
+    // charging each node to every distinct name on its path.
+    void totals() {
+	for (Counts c : predicates.values())
+	    c.nanos = 0;
+	for (Counts c : rules.values())
+	    c.nanos = 0;
+	Map<String, Integer> active = new HashMap<String, Integer>();
+	// Each entry is a node, and a marker for leaving it ...
+	Deque<Object[]> open = new ArrayDeque<Object[]>();
+	open.push(new Object[] { root, Boolean.FALSE });
+	while (!open.isEmpty()) {
+	    Object[] item = open.pop();
+	    Node node = (Node) item[0];
+	    String key = (node.rule ? "R" : "P") + node.label;
+	    if ((Boolean) item[1]) {
+		int count = active.get(key);
+		if (count == 1)
+		    active.remove(key);
+		else
+		    active.put(key, count - 1);
+		continue;
+	    }
+	    if (node != root) {
+		Integer count = active.get(key);
+		active.put(key, (count == null) ? 1 : count + 1);
+	    }
+	    for (String name : active.keySet()) {
+		Map<String, Counts> table
+		    = (name.charAt(0) == 'R') ? rules : predicates;
+		counts(table, name.substring(1)).nanos += node.nanos;
+	    }
+	    if (node != root)
+		open.push(new Object[] { node, Boolean.TRUE });
+	    if (node.children != null)
+		for (Node next : node.children.values())
+		    open.push(new Object[] { next, Boolean.FALSE });
+	}
+    }
+
+    // writeFolded -- Write the calling context tree as folded stacks, one
+    // line per node with time spent at it, giving the labels on its path
+    // separated by semicolons, and then the time in nanoseconds.
+    public void writeFolded(PrintStream out) {
+	Deque<Node> open = new ArrayDeque<Node>();
+	open.push(root);
+	while (!open.isEmpty()) {
+	    Node node = open.pop();
+	    if (node.nanos > 0)
+		out.println(path(node) + " " + node.nanos);
+	    if (node.children != null)
+		for (Node next : node.children.values())
+		    open.push(next);
+	}
+    }
+
+    // path -- Return the labels on the path to the given node, separated
+    // by semicolons.  Rules are marked, to tell them from predicates.
+    static String path(Node node) {
+	List<String> labels = new ArrayList<String>();
+	for (Node n = node; n != null; n = n.parent)
+	    labels.add(n.rule ? "rule:" + n.label : n.label);
+	Collections.reverse(labels);
+	StringBuilder result = new StringBuilder();
+	for (String label : labels) {
+	    if (result.length() > 0)
+		result.append(';');
+	    result.append(label.replace(' ', '_').replace(';', '_'));
+	}
+	return (result.toString());
+    }
+
+    // report -- Write a summary of the profile.
+    public void report(PrintStream out) {
+	totals();
+	out.printf("steps %d, deepest rule nesting %d, most choice points %d\n",
+		   steps, maxDepth, maxChoicePoints);
+	out.printf("%-24s %10s %10s %12s\n", "predicate (facts)", "attempts",
+		   "failures", "time (ms)");
+	for (Map.Entry<String, Counts> e : predicates.entrySet())
+	    out.printf("%-24s %10d %10d %12.3f\n", e.getKey(),
+		       e.getValue().attempts, e.getValue().failures,
+		       e.getValue().nanos / 1e6);
+	out.printf("%-24s %10s %10s %12s\n", "rule", "attempts", "failures",
+		   "time (ms)");
+	for (Map.Entry<String, Counts> e : rules.entrySet())
+	    out.printf("%-24s %10d %10d %12.3f\n", e.getKey(),
+		       e.getValue().attempts, e.getValue().failures,
+		       e.getValue().nanos / 1e6);
+    }
+
+
+}
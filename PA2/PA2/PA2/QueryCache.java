@@ -0,0 +1,173 @@
+//
+// QueryCache
+//
+// This class implements a cache of the results of "ask", placed in front of
+// a backward chaining engine.  Results are keyed by the goal literal with
+// its variables numbered in order of appearance, so all variants of a goal
+// share an entry.  A successful result is stored as the instance of the
+// goal proven, and a failure is stored as well.  The instance is stored
+// with novel variables, and is renamed again each time it is used, so that
+// the variables of one caller are never shared with another.  When a
+// cached goal is asked again, the caller's goal is matched against the
+// stored instance, and the engine is not consulted at all.  The binding
+// lists returned for cached results only hold bindings for the variables of
+// the goal, and not for intermediate variables.  Each entry records the
+// versions of all of the predicates that its proof might have used, found
+// by following rules from the predicate of the goal.  An entry is discarded
+// as stale when it is looked up, if any of these predicates has changed
+// since.  Only the most recently used entries are kept, up to a fixed
+// capacity.  Counts of hits, misses, and stale entries are kept.  The cache
+// may be used by many threads at once.  The table of entries is only
+// touched while holding the cache's lock, but goals are proven without it,
+// so two threads missing on the same goal at once may both prove it.
+//
+
+
+import java.util.*;
+
+
+public class QueryCache {
+
+    // A cached result, with the predicate versions it depends upon ...
+    static class Entry {
+	Rule instance;           // null if the goal could not be proven
+	String[] preds;
+	long[] versions;
+    }
+
+    public BackwardChain engine;
+    public int capacity;
+    Map<String, Entry> entries;
+    // Dependencies of each predicate, valid while the rules are unchanged ...
+    Map<String, String[]> dependencies;
+    long dependencyRules;
+    public long hits;
+    public long misses;
+    public long stale;
+
+    // Constructor for a given engine ...
+    public QueryCache(BackwardChain engine) {
+	this(engine, 10000);
+    }
+
+    // Constructor for a given engine and capacity ...
+    public QueryCache(BackwardChain engine, int capacity) {
+	this.engine = engine;
+	this.capacity = capacity;
+	this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> e) {
+		    return (size() > QueryCache.this.capacity);
+		}
+	    };
+	this.dependencies = new HashMap<String, String[]>();
+	this.dependencyRules = -1;
+	this.hits = 0;
+	this.misses = 0;
+	this.stale = 0;
+    }
+
+    // ask -- Try to prove the given goal literal, under the constraints of
+    // the given binding list, using a cached result if there is a current
+    // one.  Return a freshly allocated binding list, or null if no proof
+    // can be found.
+    public BindingList ask(Literal goal, BindingList bl) {
+	String key = goal.variantKey(bl);
+	Entry e = lookup(key);
+	if (e != null) {
+	    if (e.instance == null)
+		return (null);
+	    Literal instance = e.instance.renameConsequent(e.instance.newFrame());
+	    return (engine.unify(goal, instance, new BindingList(bl)));
+	}
+	e = new Entry();
+	e.preds = dependencies(goal.pred.name);
+	e.versions = new long[e.preds.length];
+	for (int i = 0; i < e.preds.length; i++)
+	    e.versions[i] = engine.kb.version(e.preds[i]);
+	BindingList answer = engine.ask(goal, bl);
+	if (answer != null)
+	    e.instance = normalized(goal.subst(answer));
+	synchronized (this) {
+	    entries.put(key, e);
+	}
+	return (answer);
+    }
+
+    // lookup -- Return the current entry with the given key, or null,
+    // counting the lookup as a hit or a miss.
+    synchronized Entry lookup(String key) {
+	Entry e = entries.get(key);
+	if ((e != null) && !current(e)) {
+	    entries.remove(key);
+	    stale++;
+	    e = null;
+	}
+	if (e != null)
+	    hits++;
+	else
+	    misses++;
+	return (e);
+    }
+
+    // normalized -- Return the given instance as a rule without
+    // antecedents, with novel variables, so that it can be renamed for
+    // each use and shares no variables with the goal that produced it.
+    static Rule normalized(Literal instance) {
+	Rule original = new Rule();
+	original.consequent = instance;
+	Rule stored = new Rule();
+	stored.name = "cached";
+	stored.consequent = original.renameConsequent(original.newFrame());
+	// Number the variables now, before the entry is shared ...
+	stored.numberVariables();
+	return (stored);
+    }
+
+    // ask -- Try to prove the given goal literal, using a cached result if
+    // there is a current one.
+    public BindingList ask(Literal goal) {
+	return (ask(goal, new BindingList()));
+    }
+
+    // current -- Return true if none of the predicates that the given
+    // entry depends upon have changed since it was made.
+    boolean current(Entry e) {
+	for (int i = 0; i < e.preds.length; i++)
+	    if (engine.kb.version(e.preds[i]) != e.versions[i])
+		return (false);
+	return (true);
+    }
+
+    // dependencies -- Return the predicates that a proof of the given
+    // predicate might use.
+    synchronized String[] dependencies(String pred) {
+	if (dependencyRules != engine.kb.ruleModifications) {
+	    dependencies.clear();
+	    dependencyRules = engine.kb.ruleModifications;
+	}
+	String[] preds = dependencies.get(pred);
+	if (preds == null) {
+	    preds = engine.kb.dependencies(pred).toArray(new String[0]);
+	    dependencies.put(pred, preds);
+	}
+	return (preds);
+    }
+
+    // clear -- Discard all cached results.
+    public synchronized void clear() {
+	entries.clear();
+    }
+
+    // size -- Return the number of cached results.
+    public synchronized int size() {
+	return (entries.size());
+    }
+
+    // hitRate -- Return the fraction of lookups answered from the cache.
+    public synchronized double hitRate() {
+	long lookups = hits + misses;
+	return ((lookups == 0) ? 0.0 : ((double) hits) / lookups);
+    }
+
+
+}
@@ -0,0 +1,35 @@
+//
+// QueryLimits
+//
+// This class holds the limits placed on a single query, so that a query
+// that would search forever, such as one using a left-recursive rule,
+// stops instead.  The depth limit is the deepest nesting of rules that
+// may be used in a proof:  goals at that depth are only matched against
+// facts, so proofs that need deeper nesting are not found.  The node
+// limit is the largest number of search steps, each an attempt to match a
+// goal against a fact or a rule.  The time limit is measured from the
+// start of the query.  A limit of zero means that there is no limit.
+// Queries are run under limits with "askLimited" in BackwardChain.
+//
+
+
+public class QueryLimits {
+
+    public int maxDepth;
+    public long maxNodes;
+    public long timeoutMillis;
+
+    // Default constructor, with no limits ...
+    public QueryLimits() {
+	this(0, 0, 0);
+    }
+
+    // Constructor with the limits specified ...
+    public QueryLimits(int maxDepth, long maxNodes, long timeoutMillis) {
+	this.maxDepth = maxDepth;
+	this.maxNodes = maxNodes;
+	this.timeoutMillis = timeoutMillis;
+    }
+
+
+}
@@ -0,0 +1,32 @@
+//
+// QueryResult
+//
+// This class holds the outcome of a query run under limits (see
+// QueryLimits).  The status (see QueryStatus) tells whether a proof was
+// found, whether the search was complete when none was found, or which
+// limit stopped it.  A query that hit the depth limit without finding a
+// proof is "incomplete":  a deeper search might still find one.  The
+// number of search steps taken is also kept.
+//
+
+
+public class QueryResult {
+
+    public QueryStatus status;
+    public BindingList answer;     // null unless the status is "proven"
+    public long nodes;
+
+    // Constructor ...
+    public QueryResult(QueryStatus status, BindingList answer, long nodes) {
+	this.status = status;
+	this.answer = answer;
+	this.nodes = nodes;
+    }
+
+    // proven -- Return true if a proof was found.
+    public boolean proven() {
+	return (status == QueryStatus.proven);
+    }
+
+
+}
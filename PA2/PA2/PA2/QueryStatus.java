@@ -0,0 +1,11 @@
+//
+// QueryStatus
+//
+// This enumeration gives the outcome of a query run under limits (see
+// QueryResult):  a proof was found, the search was complete and found no
+// proof, the depth limit cut the search short without a proof, or the
+// node limit or the time limit stopped the search.
+//
+
+
+public enum QueryStatus { proven, failed, incomplete, nodeLimit, timeout }
@@ -0,0 +1,267 @@
+//
+// ReasoningBenchmark
+//
+// This class provides a "main" method that measures the speed of the main
+// steps of backward chaining over synthetic knowledge bases (see
+// SyntheticKB):  "unify" on small and on deeply nested terms, "askFacts"
+// on a family tree and on deep terms, "ask" for ancestors (both true and
+// false), for reachability in a layered graph, and for deep terms,
+// "askLimited" for descendants with a JoinOrderer putting antecedents in
+// order, standardizing a rule apart, and loading a knowledge base from
+// text files and from a binary image.  Each operation is run for a while
+// to warm up the virtual machine, and then timed over many runs.  The
+// average time per operation and the rate of operations are reported,
+// along with the bytes allocated per operation, where the virtual machine
+// can count them.  Results are kept in a field, so that the work cannot
+// be optimized away.  A scale factor for the sizes of the knowledge bases
+// may be given as the first command line argument.  The ordered search is
+// also checked to find all of the descendants that the written order
+// finds, on a family tree where a careless ordering would recurse without
+// end.
+//
+
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+
+public class ReasoningBenchmark {
+
+    // An operation to be measured, given the number of the run ...
+    static abstract class Op {
+	abstract Object run(int i);
+    }
+
+    static Object sink;
+
+    // allocated -- Return the number of bytes allocated so far by this
+    // thread, or -1 if this cannot be counted.
+    static long allocated() {
+	java.lang.management.ThreadMXBean threads
+	    = ManagementFactory.getThreadMXBean();
+	if (threads instanceof com.sun.management.ThreadMXBean)
+	    return (((com.sun.management.ThreadMXBean) threads)
+		    .getThreadAllocatedBytes(Thread.currentThread().getId()));
+	return (-1);
+    }
+
+    // measure -- Warm up and then time the given operation, reporting the
+    // results under the given name.
+    static void measure(String name, Op op, int warmup, int runs) {
+	for (int i = 0; i < warmup; i++)
+	    sink = op.run(i);
+	long bytes = allocated();
+	long start = System.nanoTime();
+	for (int i = 0; i < runs; i++)
+	    sink = op.run(i);
+	long nanos = System.nanoTime() - start;
+	if (bytes >= 0)
+	    bytes = allocated() - bytes;
+	System.out.printf("%-30s %12.1f %12.0f %12s\n", name,
+			  (double) nanos / runs / 1e3, runs * 1e9 / nanos,
+			  (bytes < 0) ? "-" : String.format("%.0f",
+							    (double) bytes / runs));
+    }
+
+    // drain -- Return the number of proofs of the given goal found by the
+    // given engine within the given limits, or -1 if a limit stopped the
+    // search before all of them were found.
+    static int drain(BackwardChain engine, Literal goal, QueryLimits limits) {
+	AnswerIterator it = engine.search(Collections.singletonList(goal),
+					   new BindingList(), null);
+	it.limit(limits);
+	int found = 0;
+	while (it.hasNext()) {
+	    it.next();
+	    found++;
+	}
+	return ((it.status(false) == QueryStatus.failed) ? found : -1);
+    }
+
+    // checkOrdering -- Check that a JoinOrderer finds all of the
+    // descendants of people in a family tree, as the written order does.
+    // With more "Parent" facts than the extra cost of a goal with rules,
+    // the recursive "Ancestor" goal of "AncestorStep" would look cheaper
+    // than the "Parent" goal that bounds it, and moving it ahead would
+    // make the search endless, so it must keep its written place.
+    static void checkOrdering() {
+	int people = 600;
+	KnowledgeBase kb = SyntheticKB.familyTree(people, new int[people], 3);
+	BackwardChain written = new BackwardChain(kb);
+	BackwardChain ordered = new BackwardChain(kb);
+	ordered.orderer = new JoinOrderer(kb);
+	QueryLimits limits = new QueryLimits(0, 1000000, 0);
+	for (int person : new int[] { 0, people / 2, people - 1 }) {
+	    Literal goal = SyntheticKB.literal("(Ancestor P" + person + " ?y)");
+	    int expected = drain(written, goal, limits);
+	    int found = drain(ordered, goal, limits);
+	    if ((expected < 0) || (found != expected))
+		throw new IllegalStateException("Ordering found " + found
+						+ " rather than " + expected
+						+ " proofs of "
+						+ goal.variantKey());
+	}
+    }
+
+    public static void main(String[] args) throws IOException {
+	int scale = 1;
+	if (args.length > 0)
+	    scale = Integer.parseInt(args[0]);
+	final Random rand = new Random(175);
+	System.out.printf("%-30s %12s %12s %12s\n", "operation", "us/op",
+			  "ops/s", "bytes/op");
+
+	// Unification ...
+	final BackwardChain plain = new BackwardChain();
+	final Literal parentGoal = SyntheticKB.literal("(Parent ?x P500)");
+	final Literal parentFact = SyntheticKB.literal("(Parent P499 P500)");
+	measure("unify, family fact", new Op() {
+		Object run(int i) {
+		    return (plain.unify(parentGoal, parentFact,
+					new BindingList()));
+		}
+	    }, 200000, 1000000);
+	final Literal deepOpen = SyntheticKB.literal(
+	    "(Holds K0 " + SyntheticKB.nested("Wrap", 200, "?v") + ")");
+	final Literal deepFact = SyntheticKB.literal(
+	    "(Holds K0 " + SyntheticKB.nested("Wrap", 200, "V0") + ")");
+	measure("unify, depth 200", new Op() {
+		Object run(int i) {
+		    return (plain.unify(deepOpen, deepFact, new BindingList()));
+		}
+	    }, 20000, 100000);
+
+	// A family tree ...
+	final int people = 2000 * scale;
+	final int[] parents = new int[people];
+	KnowledgeBase familyKB = SyntheticKB.familyTree(people, parents, 1);
+	final BackwardChain family = new BackwardChain(familyKB);
+	final Literal[] parentGoals = new Literal[1000];
+	final Literal[] ancestorTrue = new Literal[1000];
+	final Literal[] ancestorFalse = new Literal[1000];
+	for (int i = 0; i < parentGoals.length; i++) {
+	    int child = 1 + rand.nextInt(people - 1);
+	    parentGoals[i] = SyntheticKB.literal("(Parent ?x P" + child + ")");
+	    int ancestor = child;
+	    for (int up = rand.nextInt(20); (up >= 0) && (parents[ancestor] >= 0);
+		 up--)
+		ancestor = parents[ancestor];
+	    ancestorTrue[i] = SyntheticKB.literal("(Ancestor P" + ancestor
+						  + " P" + child + ")");
+	    ancestorFalse[i] = SyntheticKB.literal("(Ancestor P" + child
+						   + " P" + (child / 2) + ")");
+	}
+	measure("askFacts, family tree", new Op() {
+		Object run(int i) {
+		    return (family.askFacts(parentGoals[i % parentGoals.length]));
+		}
+	    }, 5000, 20000);
+	measure("ask, ancestor (true)", new Op() {
+		Object run(int i) {
+		    return (family.ask(ancestorTrue[i % ancestorTrue.length]));
+		}
+	    }, 1000, 5000);
+	measure("ask, ancestor (false)", new Op() {
+		Object run(int i) {
+		    return (family.ask(ancestorFalse[i % ancestorFalse.length]));
+		}
+	    }, 100, 500);
+
+	// Descendants, with antecedents put in order by a JoinOrderer ...
+	final BackwardChain ordered = new BackwardChain(familyKB);
+	ordered.orderer = new JoinOrderer(familyKB);
+	final QueryLimits orderedLimits = new QueryLimits(0, 10000, 0);
+	final Literal[] descendantGoals = new Literal[1000];
+	for (int i = 0; i < descendantGoals.length; i++)
+	    descendantGoals[i] = SyntheticKB.literal(
+		"(Ancestor P" + parents[1 + rand.nextInt(people - 1)] + " ?y)");
+	measure("askLimited, ancestor (ordered)", new Op() {
+		Object run(int i) {
+		    return (ordered.askLimited(
+			descendantGoals[i % descendantGoals.length],
+			new BindingList(), orderedLimits));
+		}
+	    }, 1000, 5000);
+	checkOrdering();
+
+	// A layered graph ...
+	final int width = 50 * scale;
+	KnowledgeBase graphKB = SyntheticKB.graph(8, width, 2, 2);
+	final BackwardChain graph = new BackwardChain(graphKB);
+	final Literal[] reachGoals = new Literal[1000];
+	for (int i = 0; i < reachGoals.length; i++)
+	    reachGoals[i] = SyntheticKB.literal(
+		"(Reach " + SyntheticKB.node(0, rand.nextInt(width)) + " "
+		+ SyntheticKB.node(5, rand.nextInt(width)) + ")");
+	measure("ask, graph reachability", new Op() {
+		Object run(int i) {
+		    return (graph.ask(reachGoals[i % reachGoals.length]));
+		}
+	    }, 1000, 3000);
+
+	// Deep terms ...
+	final int held = 2000 * scale;
+	final BackwardChain deep
+	    = new BackwardChain(SyntheticKB.deepTerms(held, 50));
+	final Literal[] holdsGoals = new Literal[1000];
+	final Literal[] hasGoals = new Literal[1000];
+	for (int i = 0; i < holdsGoals.length; i++) {
+	    int k = rand.nextInt(held);
+	    holdsGoals[i] = SyntheticKB.literal("(Holds K" + k + " ?t)");
+	    hasGoals[i] = SyntheticKB.literal(
+		"(Has K" + k + " " + SyntheticKB.nested("Wrap", 50, "?v") + ")");
+	}
+	measure("askFacts, deep terms", new Op() {
+		Object run(int i) {
+		    return (deep.askFacts(holdsGoals[i % holdsGoals.length]));
+		}
+	    }, 20000, 100000);
+	measure("ask, deep terms", new Op() {
+		Object run(int i) {
+		    return (deep.ask(hasGoals[i % hasGoals.length]));
+		}
+	    }, 10000, 50000);
+
+	// Standardizing apart ...
+	final Rule step = familyKB.rules.get(1);
+	measure("standardizeApart", new Op() {
+		Object run(int i) {
+		    return (step.standardizeApart());
+		}
+	    }, 200000, 1000000);
+
+	// Loading ...
+	String[] text = SyntheticKB.text(familyKB);
+	final File factsFile = File.createTempFile("facts", ".dat");
+	final File rulesFile = File.createTempFile("rules", ".dat");
+	final File imageFile = File.createTempFile("image", ".kb");
+	factsFile.deleteOnExit();
+	rulesFile.deleteOnExit();
+	imageFile.deleteOnExit();
+	Writer out = new FileWriter(factsFile);
+	out.write(text[0]);
+	out.close();
+	out = new FileWriter(rulesFile);
+	out.write(text[1]);
+	out.close();
+	familyKB.writeImage(imageFile.getPath());
+	measure("load, text files", new Op() {
+		Object run(int i) {
+		    KnowledgeBase kb = new KnowledgeBase(factsFile.getPath(),
+							 rulesFile.getPath());
+		    kb.readFacts();
+		    kb.readRules();
+		    return (kb);
+		}
+	    }, 20, 100);
+	measure("load, binary image", new Op() {
+		Object run(int i) {
+		    KnowledgeBase kb = new KnowledgeBase();
+		    kb.readImage(imageFile.getPath());
+		    return (kb);
+		}
+	    }, 20, 100);
+    }
+
+}
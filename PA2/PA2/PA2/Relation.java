@@ -0,0 +1,214 @@
+//
+// Relation
+//
+// This class implements a relation:  a set of tuples of interned symbol
+// identifiers, all of the same arity.  Tuples are stored by column, in
+// growable integer arrays, and are only ever appended, so each tuple is
+// identified by its row number.  Duplicate tuples are rejected using an
+// open addressing hash table of row numbers.  Hash indexes on any subset
+// of the columns can be requested, for use in joins.  Each index chains
+// together the rows that share a hash bucket, and it is brought up to date
+// with any newly appended rows whenever it is requested.  The rows in the
+// range from "deltaStart" to "deltaEnd" are those added in the most recent
+// round of a semi-naive evaluation.
+//
+
+
+import java.util.*;
+
+
+public class Relation {
+
+    // A hash index on a subset of the columns ...
+    public static class Index {
+	Relation rel;
+	int[] cols;
+	int[] heads;      // bucket -> row + 1, or 0 if empty
+	int[] next;       // row -> next row in bucket + 1, or 0
+	int indexed;      // number of rows indexed so far
+
+	Index(Relation rel, int[] cols) {
+	    this.rel = rel;
+	    this.cols = cols;
+	    this.heads = new int[16];
+	    this.next = new int[16];
+	    this.indexed = 0;
+	}
+
+	// extend -- Add any rows appended since the index was last used.
+	void extend() {
+	    if (indexed == rel.size)
+		return;
+	    if (next.length < rel.size)
+		next = Arrays.copyOf(next, rel.capacity());
+	    if (rel.size > heads.length) {
+		// Rehash all rows into a larger table ...
+		int buckets = heads.length;
+		while (buckets < rel.size)
+		    buckets *= 2;
+		heads = new int[buckets * 2];
+		indexed = 0;
+	    }
+	    for (int row = indexed; row < rel.size; row++) {
+		int b = bucket(rel.hashRow(row, cols));
+		next[row] = heads[b];
+		heads[b] = row + 1;
+	    }
+	    indexed = rel.size;
+	}
+
+	int bucket(int hash) {
+	    return (hash & (heads.length - 1));
+	}
+
+	// first -- Return the first row that might have the given values in
+	// the indexed columns, or -1 if there is none.  Rows must be checked
+	// with "matches" to rule out hash collisions.
+	public int first(int[] values) {
+	    return (heads[bucket(hashValues(values))] - 1);
+	}
+
+	// next -- Return the row after the given one in the same bucket, or
+	// -1 if there is none.
+	public int next(int row) {
+	    return (next[row] - 1);
+	}
+
+	// matches -- Return true if the given row has the given values in the
+	// indexed columns.
+	public boolean matches(int row, int[] values) {
+	    for (int i = 0; i < cols.length; i++)
+		if (rel.columns[cols[i]][row] != values[i])
+		    return (false);
+	    return (true);
+	}
+    }
+
+    public String name;
+    public int arity;
+    public int size;
+    public int deltaStart;
+    public int deltaEnd;
+    int[][] columns;
+    int[] slots;          // duplicate detection:  row + 1, or 0 if empty
+    Map<String, Index> indexes;
+
+    // Constructor ...
+    public Relation(String name, int arity) {
+	this.name = name;
+	this.arity = arity;
+	this.size = 0;
+	this.deltaStart = 0;
+	this.deltaEnd = 0;
+	this.columns = new int[arity][16];
+	this.slots = new int[32];
+	this.indexes = new HashMap<String, Index>();
+    }
+
+    // capacity -- Return the number of rows that fit in the current columns.
+    int capacity() {
+	return ((arity == 0) ? Math.max(size, 16) : columns[0].length);
+    }
+
+    // get -- Return the value in the given row and column.
+    public int get(int row, int col) {
+	return (columns[col][row]);
+    }
+
+    // mix -- Scramble the bits of a hash code.
+    static int mix(int h) {
+	h ^= (h >>> 16);
+	h *= 0x85ebca6b;
+	h ^= (h >>> 13);
+	return (h);
+    }
+
+    // hashValues -- Return the hash code of the given values.
+    static int hashValues(int[] values) {
+	int h = 1;
+	for (int v : values)
+	    h = 31 * h + v;
+	return (mix(h));
+    }
+
+    // hashRow -- Return the hash code of the given columns of the given row,
+    // consistent with "hashValues".
+    int hashRow(int row, int[] cols) {
+	int h = 1;
+	for (int c : cols)
+	    h = 31 * h + columns[c][row];
+	return (mix(h));
+    }
+
+    // hashTuple -- Return the hash code of all columns of the given row.
+    int hashTuple(int row) {
+	int h = 1;
+	for (int c = 0; c < arity; c++)
+	    h = 31 * h + columns[c][row];
+	return (mix(h));
+    }
+
+    // find -- Return the slot holding the given tuple, or the empty slot
+    // where it would go.
+    int find(int[] tuple) {
+	int mask = slots.length - 1;
+	int s = hashValues(tuple) & mask;
+	while (slots[s] != 0) {
+	    int row = slots[s] - 1;
+	    boolean same = true;
+	    for (int c = 0; same && (c < arity); c++)
+		same = (columns[c][row] == tuple[c]);
+	    if (same)
+		return (s);
+	    s = (s + 1) & mask;
+	}
+	return (s);
+    }
+
+    // contains -- Return true if the given tuple is in this relation.
+    public boolean contains(int[] tuple) {
+	return (slots[find(tuple)] != 0);
+    }
+
+    // add -- Add the given tuple to this relation, unless it is already
+    // present.  Return true if the tuple is new.
+    public boolean add(int[] tuple) {
+	int s = find(tuple);
+	if (slots[s] != 0)
+	    return (false);
+	if (size == capacity()) {
+	    for (int c = 0; c < arity; c++)
+		columns[c] = Arrays.copyOf(columns[c], size * 2);
+	}
+	for (int c = 0; c < arity; c++)
+	    columns[c][size] = tuple[c];
+	slots[s] = size + 1;
+	size++;
+	if (size * 2 > slots.length) {
+	    // Grow the duplicate detection table ...
+	    slots = new int[slots.length * 2];
+	    int mask = slots.length - 1;
+	    for (int row = 0; row < size; row++) {
+		int t = hashTuple(row) & mask;
+		while (slots[t] != 0)
+		    t = (t + 1) & mask;
+		slots[t] = row + 1;
+	    }
+	}
+	return (true);
+    }
+
+    // index -- Return an up to date hash index on the given columns.
+    public Index index(int[] cols) {
+	String key = Arrays.toString(cols);
+	Index idx = indexes.get(key);
+	if (idx == null) {
+	    idx = new Index(this, cols);
+	    indexes.put(key, idx);
+	}
+	idx.extend();
+	return (idx);
+    }
+
+
+}
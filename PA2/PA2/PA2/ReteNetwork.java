@@ -0,0 +1,111 @@
+//
+// ReteNetwork
+//
+// This class implements a Rete network for forward chaining over Horn
+// clause rules.  The rules of a knowledge base are compiled into a network
+// of alpha memories, one for each distinct antecedent pattern, and chains
+// of join nodes, one chain for each rule.  Facts are asserted into the
+// network one at a time.  Each new fact is routed, using a discrimination
+// tree over the alpha memory patterns, to the alpha memories that it
+// matches, and from there it is joined with the partial matches stored
+// in the join nodes.  Complete matches produce derived facts, which are
+// queued and asserted in turn, until no new facts can be derived.  All
+// known and derived facts are kept in a separate, materialized, knowledge
+// base, with duplicates removed.  Note that rules which build ever larger
+// function terms can cause an endless derivation.
+//
+
+
+import java.util.*;
+
+
+public class ReteNetwork {
+
+    public BackwardChain engine;     // used for unification
+    public KnowledgeBase store;      // materialized facts
+    Set<String> known;
+    Map<String, AlphaMemory> alphas;
+    DiscriminationTree<AlphaMemory> alphaIndex;
+    Deque<Literal> agenda;
+
+    // Constructor ...
+    public ReteNetwork(BackwardChain engine) {
+	this.engine = engine;
+	this.store = new KnowledgeBase();
+	this.known = new HashSet<String>();
+	this.alphas = new HashMap<String, AlphaMemory>();
+	this.alphaIndex = new DiscriminationTree<AlphaMemory>();
+	this.agenda = new ArrayDeque<Literal>();
+    }
+
+    // alphaMemory -- Return the alpha memory for the given antecedent
+    // pattern, creating it if needed.
+    AlphaMemory alphaMemory(Literal pattern) {
+	String key = pattern.variantKey();
+	AlphaMemory alpha = alphas.get(key);
+	if (alpha == null) {
+	    alpha = new AlphaMemory(pattern);
+	    alphas.put(key, alpha);
+	    alphaIndex.insert(pattern, alpha);
+	    // Catch up with the facts asserted so far ...
+	    for (Literal fact : store.candidateFacts(pattern, null))
+		if (engine.unify(pattern, fact, new BindingList()) != null)
+		    alpha.facts.add(fact);
+	}
+	return (alpha);
+    }
+
+    // addRule -- Compile the given rule into the network, joining it with
+    // any facts asserted so far, and derive any resulting facts.
+    public void addRule(Rule rule) {
+	Rule r = rule.standardizeApart();
+	if (r.antecedents.size() == 0) {
+	    derive(r.consequent);
+	} else {
+	    JoinNode first = null;
+	    JoinNode previous = null;
+	    for (Literal ante : r.antecedents) {
+		AlphaMemory alpha = alphaMemory(ante);
+		JoinNode join = new JoinNode(this, r, ante, alpha);
+		alpha.successors.add(join);
+		if (previous == null)
+		    first = join;
+		else
+		    previous.next = join;
+		previous = join;
+	    }
+	    // The first join node starts with a single, empty, token ...
+	    first.leftActivate(new BindingList());
+	}
+	run();
+    }
+
+    // addFact -- Assert the given fact, and derive all of its consequences.
+    public void addFact(Literal fact) {
+	derive(fact);
+	run();
+    }
+
+    // derive -- Queue the given fact for assertion, unless it is already
+    // known.
+    void derive(Literal fact) {
+	if (known.add(fact.variantKey())) {
+	    store.addFact(fact);
+	    agenda.add(fact);
+	}
+    }
+
+    // run -- Assert queued facts into the alpha memories until there are
+    // no more.
+    void run() {
+	while (!agenda.isEmpty()) {
+	    Literal fact = agenda.poll();
+	    for (AlphaMemory alpha : alphaIndex.retrieve(fact, null)) {
+		if (engine.unify(alpha.pattern, fact, new BindingList()) != null)
+		    alpha.activate(fact);
+	    }
+	}
+    }
+
+
+}
@@ -12,6 +12,15 @@
 // substitution procedure is also used by a method that replaces all variables
 // with novel variables, effectively standardizing the rule apart.
 //
+// Standardizing apart is done often, so it is made cheap.  The variables of
+// a rule are numbered once, in order of appearance, and a renaming of the
+// rule is just a "frame" that reserves a block of novel variable identifiers,
+// one at a fixed offset for each numbered variable.  The novel variables are
+// only created when they are first needed, and ground literals and terms are
+// shared rather than copied.  The consequent can be renamed on its own, so
+// that the antecedents need only be renamed if the consequent unifies with
+// a goal.  Rules should not be modified once they are in use.
+//
 // David Noelle -- Tue Apr 10 17:08:45 PDT 2007
 //
 
@@ -25,12 +34,27 @@ public class Rule {
     public String name;
     public Literal consequent;            // the "head" of the rule
     public List<Literal> antecedents;     // the "tail" of the rule
+    Map<Integer, Integer> slotOf;         // variable identifier -> number
+    Variable[] slotVariables;
+
+    // A renaming of the variables of a rule, to novel variables ...
+    public static class Frame {
+	int base;
+	Term[] terms;
+
+	Frame(int base, int size) {
+	    this.base = base;
+	    this.terms = new Term[size];
+	}
+    }
 
     // Default constructor ...
     public Rule() {
 	this.name = "NULL";
 	this.consequent = null;
 	this.antecedents = new ArrayList<Literal>();
+	this.slotOf = null;
+	this.slotVariables = null;
     }
 
     // equals -- Return true if and only if this rule is the same as the 
@@ -50,17 +74,95 @@ public class Rule {
 
     // allVariables -- Return a set of all the variables in this function.
     public Set<Variable> allVariables() {
-	Set<Variable> allVs = new HashSet<Variable>();
-	allVs.addAll(consequent.allVariables());
-	for (Literal ante : antecedents) {
-	    allVs.addAll(ante.allVariables());
+	numberVariables();
+	return (new HashSet<Variable>(Arrays.asList(slotVariables)));
+    }
+
+    // numberVariables -- Number the variables of this rule in order of
+    // appearance, if this has not already been done.
+    void numberVariables() {
+	if (slotOf != null)
+	    return;
+	Map<Integer, Integer> numbers = new HashMap<Integer, Integer>();
+	List<Variable> vars = new ArrayList<Variable>();
+	numberVariables(consequent.args, numbers, vars);
+	for (Literal ante : antecedents)
+	    numberVariables(ante.args, numbers, vars);
+	slotVariables = vars.toArray(new Variable[vars.size()]);
+	slotOf = numbers;
+    }
+
+    // numberVariables -- Number the variables in the given terms that have
+    // not been numbered yet.
+    static void numberVariables(List<Term> terms, Map<Integer, Integer> numbers,
+				List<Variable> vars) {
+	for (Term t : terms) {
+	    if (t.v != null) {
+		if (!numbers.containsKey(t.v.id)) {
+		    numbers.put(t.v.id, vars.size());
+		    vars.add(t.v);
+		}
+	    } else if (t.f != null) {
+		numberVariables(t.f.args, numbers, vars);
+	    }
 	}
-	return (allVs);
+    }
+
+    // newFrame -- Return a new renaming of the variables of this rule.
+    public Frame newFrame() {
+	numberVariables();
+	return (new Frame(Variable.reserve(slotVariables.length),
+			  slotVariables.length));
+    }
+
+    // rename -- Return the given term, from this rule, with its variables
+    // renamed according to the given frame.
+    Term rename(Term t, Frame frame) {
+	if (t.isGround())
+	    return (t);
+	if (t.v != null) {
+	    int slot = slotOf.get(t.v.id);
+	    if (frame.terms[slot] == null)
+		frame.terms[slot] = new Term(new Variable(frame.base - slot));
+	    return (frame.terms[slot]);
+	}
+	Function f = new Function();
+	f.func = t.f.func;
+	for (Term arg : t.f.args)
+	    f.args.add(rename(arg, frame));
+	return (new Term(f));
+    }
+
+    // rename -- Return the given literal, from this rule, with its variables
+    // renamed according to the given frame.
+    Literal rename(Literal lit, Frame frame) {
+	if (lit.isGround())
+	    return (lit);
+	Literal result = new Literal();
+	result.pred = lit.pred;
+	for (Term arg : lit.args)
+	    result.args.add(rename(arg, frame));
+	return (result);
+    }
+
+    // renameConsequent -- Return the consequent of this rule with its
+    // variables renamed according to the given frame.
+    public Literal renameConsequent(Frame frame) {
+	return (rename(consequent, frame));
+    }
+
+    // renameAntecedents -- Return the antecedents of this rule with their
+    // variables renamed according to the given frame.
+    public List<Literal> renameAntecedents(Frame frame) {
+	List<Literal> result = new ArrayList<Literal>(antecedents.size());
+	for (Literal ante : antecedents)
+	    result.add(rename(ante, frame));
+	return (result);
     }
 
     // subst -- Return a new Rule object that is the result of applying
-    // the given binding list to all of the literals in this rule.  Return 
-    // null on error.
+    // the given binding list to all of the literals in this rule.  Ground
+    // literals are shared with this rule.  Return null on error.
     public Rule subst(BindingList bl) {
 	Rule result = new Rule();
 	result.name = name;
@@ -74,19 +176,19 @@ public class Rule {
     // standardizeApart -- Return a new Rule object that is a copy of this
     // rule with all of the variable names changed.  Return null on error.
     public Rule standardizeApart() {
-	Set<Variable> initialVars = allVariables();
-	BindingList bl = new BindingList();
-	for (Variable v : initialVars) {
-	    // Add a binding from this initial variable to a new, novel,
-	    // variable (converted into a term) ...
-	    bl.addVariableBinding(v, new Term(new Variable("")));
-	}
-	return (subst(bl));
+	Frame frame = newFrame();
+	Rule result = new Rule();
+	result.name = name;
+	result.consequent = renameConsequent(frame);
+	result.antecedents = renameAntecedents(frame);
+	return (result);
     }
 
     // read -- Read a rule from the given scanner, filling in this object with 
     // the results.  Return false on error.
     public boolean read(Scanner inScanner) {
+	slotOf = null;
+	slotVariables = null;
 	inScanner.useDelimiter("[\\s]+");
 	// Find and discard opening parenthesis ...
 	try {
@@ -0,0 +1,81 @@
+//
+// SubgoalTable
+//
+// This class implements the table kept for a single subgoal during tabled
+// resolution.  The subgoal is stored as a representative literal, and all
+// of its variants share the same table.  The table records the distinct
+// answers found so far, each as an instance of the representative literal,
+// along with the bookkeeping needed to detect when no further answers can
+// be found:  whether the subgoal is currently being evaluated, its position
+// on the evaluation stack, and the position of the oldest subgoal it
+// depends upon (the leader of its strongly connected component).  An
+// answer that is not ground is handed out with novel variables each time
+// it is used (see "answer"), so that the variables of one use cannot be
+// confused with those of another, or with those of the goal it answers.
+//
+
+
+import java.util.*;
+
+
+public class SubgoalTable {
+
+    public Literal goal;
+    public List<Literal> answers;
+    List<Rule> answerFrames;   // for renaming answers, null if ground
+    Set<String> answerKeys;
+    public boolean complete;
+    boolean onStack;
+    boolean evaluated;
+    int depth;           // position on the evaluation stack
+    int leader;          // stack position of the component leader
+    long pass;           // current evaluation pass, while on the stack
+    SubgoalTable leaderTable;   // component leader when last evaluated
+    long leaderPass;            // pass of that leader at the time
+
+    // Constructor for a given subgoal ...
+    public SubgoalTable(Literal goal) {
+	this.goal = goal;
+	this.answers = new ArrayList<Literal>();
+	this.answerFrames = new ArrayList<Rule>();
+	this.answerKeys = new HashSet<String>();
+	this.complete = false;
+	this.onStack = false;
+	this.evaluated = false;
+	this.depth = -1;
+	this.leader = -1;
+	this.pass = -1;
+	this.leaderTable = null;
+	this.leaderPass = -1;
+    }
+
+    // addAnswer -- Record the given answer literal, unless a variant of it
+    // is already in the table.  Return true if the answer is new.
+    public boolean addAnswer(Literal answer) {
+	if (answerKeys.add(answer.variantKey())) {
+	    answers.add(answer);
+	    Rule frames = null;
+	    if (!answer.isGround()) {
+		// The answer is kept as a rule without antecedents, so that it
+		// can be renamed as rules are ...
+		frames = new Rule();
+		frames.name = "answer";
+		frames.consequent = answer;
+	    }
+	    answerFrames.add(frames);
+	    return (true);
+	}
+	return (false);
+    }
+
+    // answer -- Return the answer at the given position, with its
+    // variables replaced by novel variables.  Ground answers are shared.
+    public Literal answer(int i) {
+	Rule frames = answerFrames.get(i);
+	if (frames == null)
+	    return (answers.get(i));
+	return (frames.renameConsequent(frames.newFrame()));
+    }
+
+
+}
@@ -3,7 +3,10 @@
 //
 // This class implements an atomic symbol.  Symbol names can be provided
 // at creation time.  If the empty string is provided as a symbol name,
-// a novel name is provided for the symbol, instead.
+// a novel name is provided for the symbol, instead.  Every symbol name is
+// interned in a global symbol table, and the resulting integer identifier
+// is kept with the symbol, so that symbols can be compared and hashed as
+// integers rather than as strings.
 //
 // David Noelle -- Tue Apr 10 17:08:45 PDT 2007
 //
@@ -19,11 +22,16 @@ public class Symbol {
     static String gensymPrefix = "SYM-";
     static int gensymCounter = 1;
 
+    // Table of all symbol names ...
+    public static final SymbolTable table = new SymbolTable();
+
     public String name = "";
+    public int id;
 
     // Default constructor ...
     public Symbol() {
 	this.name = "NULL";
+	this.id = table.intern(this.name);
     }
 
     // Constructor with symbol name specified ...
@@ -36,12 +44,29 @@ public class Symbol {
 	} else {
 	    this.name = name;
 	}
+	this.id = table.intern(this.name);
+    }
+
+    // getName -- Return the name of this symbol.
+    public String getName() {
+	return (name);
     }
 
     // equals -- Return true if and only if this symbol has the same name
     // as the argument symbol.
     public boolean equals(Symbol s) {
-	return (s.name.equals(this.name));
+	return (s.id == this.id);
+    }
+
+    // equals -- Return true if and only if the given object is a symbol
+    // with the same name as this symbol.
+    public boolean equals(Object obj) {
+	return ((obj instanceof Symbol) && (((Symbol) obj).id == this.id));
+    }
+
+    // hashCode -- Return a hash code consistent with "equals".
+    public int hashCode() {
+	return (id);
     }
 
     // read -- Read a symbol from the given scanner, changing the name of
@@ -51,6 +76,7 @@ public class Symbol {
 	if (inScanner.hasNext()) {
 	    // There is a symbol ...
 	    name = inScanner.next();
+	    id = table.intern(name);
 	    return (true);
 	} else {
 	    // There is nothing to read ...
@@ -61,7 +87,7 @@ public class Symbol {
     // write -- Write the name of this symbol to the given stream.
     public void write(OutputStream str) {
 	PrintWriter out = new PrintWriter(str, true);
-	out.printf("%s", name);
+	out.printf("%s", getName());
     }
 
 
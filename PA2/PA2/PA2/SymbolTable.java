@@ -0,0 +1,56 @@
+//
+// SymbolTable
+//
+// This class implements a table of interned symbol names.  Each distinct
+// name is assigned a small integer identifier, in order of first appearance,
+// so that symbols can be stored and compared as integers rather than as
+// strings.  The name for any identifier can be recovered.  Tables may be
+// shared between threads.
+//
+
+
+import java.util.*;
+
+
+public class SymbolTable {
+
+    Map<String, Integer> ids;
+    List<String> names;
+
+    // Default constructor ...
+    public SymbolTable() {
+	this.ids = new HashMap<String, Integer>();
+	this.names = new ArrayList<String>();
+    }
+
+    // intern -- Return the identifier for the given name, assigning a new
+    // one if the name has not been seen before.
+    public synchronized int intern(String name) {
+	Integer id = ids.get(name);
+	if (id == null) {
+	    id = names.size();
+	    ids.put(name, id);
+	    names.add(name);
+	}
+	return (id);
+    }
+
+    // lookup -- Return the identifier for the given name, or -1 if the
+    // name has not been interned.
+    public synchronized int lookup(String name) {
+	Integer id = ids.get(name);
+	return ((id == null) ? -1 : id);
+    }
+
+    // name -- Return the name with the given identifier.
+    public synchronized String name(int id) {
+	return (names.get(id));
+    }
+
+    // size -- Return the number of interned names.
+    public synchronized int size() {
+	return (names.size());
+    }
+
+
+}
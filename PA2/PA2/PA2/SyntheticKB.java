@@ -0,0 +1,115 @@
+//
+// SyntheticKB
+//
+// This class generates synthetic knowledge bases, of any size, for use in
+// benchmarks.  Three shapes are provided.  A family tree has a "Parent"
+// fact for each person but the first, with each parent chosen from the
+// few people just before the child, making a long and narrow tree, and
+// rules for "Ancestor" that climb from the younger person.  A layered
+// graph has "Edge" facts from each node to a few nodes in the next layer,
+// and rules for "Reach" that follow edges forward.  Deep terms are
+// "Holds" facts whose second argument is a function invocation nested to
+// a given depth, with rules for "Has" that look inside them.  Names are
+// numbered, so that goals can be made to match, and generation is driven
+// by a seeded random number generator, so it can be repeated.
+//
+
+
+import java.util.*;
+
+
+public class SyntheticKB {
+
+    // literal -- Return the literal written in the given text.
+    public static Literal literal(String text) {
+	return (new KBParser(text.getBytes()).parseLiteral());
+    }
+
+    // rule -- Return the rule written in the given text.
+    public static Rule rule(String text) {
+	return (new KBParser(text.getBytes()).parseRule());
+    }
+
+    // familyTree -- Return a family tree of the given number of people,
+    // named P0, P1, and so on, with the parents of each person recorded in
+    // the given array.
+    public static KnowledgeBase familyTree(int people, int[] parents,
+					   long seed) {
+	Random rand = new Random(seed);
+	KnowledgeBase kb = new KnowledgeBase();
+	for (int i = 1; i < people; i++) {
+	    parents[i] = Math.max(0, i - 1 - rand.nextInt(10));
+	    kb.addFact(literal("(Parent P" + parents[i] + " P" + i + ")"));
+	}
+	parents[0] = -1;
+	kb.addRule(rule("(DEFRULE AncestorBase (Parent ?x ?y)"
+			+ " => (Ancestor ?x ?y))"));
+	kb.addRule(rule("(DEFRULE AncestorStep (Parent ?y ?z) (Ancestor ?x ?y)"
+			+ " => (Ancestor ?x ?z))"));
+	return (kb);
+    }
+
+    // graph -- Return a layered graph with the given number of layers,
+    // each of the given width, and the given number of edges from each
+    // node to the next layer.  Nodes are named N<layer>_<position>.
+    public static KnowledgeBase graph(int layers, int width, int edges,
+				      long seed) {
+	Random rand = new Random(seed);
+	KnowledgeBase kb = new KnowledgeBase();
+	for (int layer = 0; layer + 1 < layers; layer++)
+	    for (int i = 0; i < width; i++)
+		for (int e = 0; e < edges; e++)
+		    kb.addFact(literal("(Edge " + node(layer, i) + " "
+				       + node(layer + 1, rand.nextInt(width))
+				       + ")"));
+	kb.addRule(rule("(DEFRULE ReachBase (Edge ?x ?y) => (Reach ?x ?y))"));
+	kb.addRule(rule("(DEFRULE ReachStep (Edge ?x ?y) (Reach ?y ?z)"
+			+ " => (Reach ?x ?z))"));
+	return (kb);
+    }
+
+    // node -- Return the name of a node of a layered graph.
+    public static String node(int layer, int position) {
+	return ("N" + layer + "_" + position);
+    }
+
+    // nested -- Return the text of a term with the given number of
+    // invocations of the given function around the given innermost term.
+    public static String nested(String func, int depth, String inner) {
+	StringBuilder text = new StringBuilder();
+	for (int i = 0; i < depth; i++)
+	    text.append('(').append(func).append(' ');
+	text.append(inner);
+	for (int i = 0; i < depth; i++)
+	    text.append(')');
+	return (text.toString());
+    }
+
+    // deepTerms -- Return a knowledge base of the given number of "Holds"
+    // facts, K<i> holding a term nested to the given depth around the
+    // constant V<i>.
+    public static KnowledgeBase deepTerms(int facts, int depth) {
+	KnowledgeBase kb = new KnowledgeBase();
+	for (int i = 0; i < facts; i++)
+	    kb.addFact(literal("(Holds K" + i + " "
+			       + nested("Wrap", depth, "V" + i) + ")"));
+	kb.addRule(rule("(DEFRULE HasHeld (Holds ?k ?t) => (Has ?k ?t))"));
+	return (kb);
+    }
+
+    // text -- Return the facts and rules of the given knowledge base, as
+    // they would be written in facts and rules files.
+    public static String[] text(KnowledgeBase kb) {
+	java.io.ByteArrayOutputStream facts = new java.io.ByteArrayOutputStream();
+	for (Literal fact : kb.facts) {
+	    fact.write(facts);
+	    facts.write('\n');
+	}
+	java.io.ByteArrayOutputStream rules = new java.io.ByteArrayOutputStream();
+	for (Rule r : kb.rules)
+	    r.write(rules);
+	return (new String[] { facts.toString(), rules.toString() });
+    }
+
+
+}
@@ -0,0 +1,316 @@
+//
+// TabledChain
+//
+// This class implements tabled backward chaining, in the style of linear
+// (SLG-like) tabled resolution.  Every subgoal encountered during a proof
+// is looked up in a table of subgoals, keyed by the subgoal literal with
+// its variables numbered in order of appearance, so that all variants of
+// a subgoal share a single table of answers.  A subgoal is evaluated only
+// once per query if it does not depend on itself.  When a recursive rule
+// leads back to a subgoal that is still being evaluated, the answers found
+// so far are used, and the oldest such subgoal (the "leader" of the
+// strongly connected component of mutually dependent subgoals) repeats its
+// evaluation until no new answers appear anywhere in the component.  At
+// that point every table in the component is marked complete, and its
+// answers are reused without further search.  Subgoals are solved a set
+// at a time, so "answers" returns an iterator over a fully computed list.
+// For knowledge bases without function symbols, this always terminates,
+// even with left-recursive rules, and runs in polynomial time.  Tables are
+// discarded at the start of each top-level query.  Each query reads a
+// single snapshot of the knowledge base (see KnowledgeBase), so it is not
+// disturbed by facts and rules added or removed while it runs.  An engine
+// answers one query at a time.  Every way of asking a query goes through
+// the tables, including "ask" with a profiler and "askLimited".  The
+// profiler is told of each attempt to match a subgoal against a fact or a
+// rule, with the calling context taken from the rules that led to the
+// subgoal's first evaluation.  Under limits, each such attempt is a step,
+// and a subgoal whose rules would nest too deeply is only matched against
+// facts.  A query stopped by a limit returns the proofs found so far.
+//
+
+
+import java.util.*;
+
+
+public class TabledChain extends BackwardChain {
+
+    Map<String, SubgoalTable> tables;
+    List<SubgoalTable> stack;        // subgoals being evaluated
+    List<SubgoalTable> incomplete;   // incomplete subgoals, in order
+    long answersAdded;
+    long passes;
+    long snapshot;                   // version read by the current query
+    // The profiler and the limits of the current query, which may be null,
+    // and its progress against them ...
+    ProofProfiler queryProfiler;
+    ProofProfiler.Node ruleNode;     // rule being evaluated, for the profiler
+    QueryLimits limits;
+    long deadline;
+    long nodes;
+    boolean depthCut;
+    QueryStatus stopped;
+
+    // Default constructor ...
+    public TabledChain() {
+	super();
+	initTables();
+    }
+
+    // Constructor for reasoning over an existing knowledge base ...
+    public TabledChain(KnowledgeBase kb) {
+	super(kb);
+	initTables();
+    }
+
+    // initTables -- Allocate empty tables.
+    void initTables() {
+	this.tables = new HashMap<String, SubgoalTable>();
+	this.stack = new ArrayList<SubgoalTable>();
+	this.incomplete = new ArrayList<SubgoalTable>();
+	this.answersAdded = 0;
+	this.passes = 0;
+    }
+
+    // abolishTables -- Discard all subgoal tables.
+    public void abolishTables() {
+	tables.clear();
+	incomplete.clear();
+    }
+
+    // answers -- Return an iterator over all of the proofs of the given
+    // list of goal literals, under the constraints of the given binding
+    // list, using tabled resolution, reporting the search to the given
+    // profiler (which may be null).  The proofs are all found at once, and
+    // the snapshot is closed before they are returned.
+    public Answers answers(List<Literal> goals, BindingList bl,
+			   ProofProfiler profiler) {
+	final Iterator<BindingList> proofs
+	    = solve(goals, bl, profiler, null).iterator();
+	return (new Answers() {
+		public boolean hasNext() {
+		    return (proofs.hasNext());
+		}
+
+		public BindingList next() {
+		    return (proofs.next());
+		}
+
+		public void close() {
+		}
+	    });
+    }
+
+    // askLimited -- Try to prove the given goal literal, under the
+    // constraints of the given binding list, within the given limits,
+    // using tabled resolution.  Return the outcome, with the first proof
+    // found, if any.
+    public QueryResult askLimited(Literal goal, BindingList bl,
+				  QueryLimits limits) {
+	List<BindingList> proofs
+	    = solve(Collections.singletonList(goal), bl, profiler, limits);
+	BindingList answer = proofs.isEmpty() ? null : proofs.get(0);
+	QueryStatus status;
+	if (answer != null)
+	    status = QueryStatus.proven;
+	else if (stopped != null)
+	    status = stopped;
+	else
+	    status = depthCut ? QueryStatus.incomplete : QueryStatus.failed;
+	return (new QueryResult(status, answer, nodes));
+    }
+
+    // solve -- Return all of the proofs of the given list of goal literals,
+    // under the constraints of the given binding list, found with fresh
+    // tables, reading a snapshot of the knowledge base, reporting to the
+    // given profiler and stopping at the given limits (either of which may
+    // be null).
+    List<BindingList> solve(List<Literal> goals, BindingList bl,
+			    ProofProfiler profiler, QueryLimits limits) {
+	abolishTables();
+	this.queryProfiler = profiler;
+	this.ruleNode = null;
+	this.limits = limits;
+	if (limits != null)
+	    this.deadline = System.nanoTime() + limits.timeoutMillis * 1000000L;
+	this.nodes = 0;
+	this.depthCut = false;
+	this.stopped = null;
+	snapshot = kb.openSnapshot();
+	try {
+	    return (solveConjunction(goals, bl));
+	} finally {
+	    kb.closeSnapshot(snapshot);
+	    if (profiler != null)
+		profiler.pause();
+	}
+    }
+
+    // overLimit -- Count a search step, and return true if the query has
+    // reached its node limit or its time limit, recording which.
+    boolean overLimit() {
+	if (stopped != null)
+	    return (true);
+	if (limits == null)
+	    return (false);
+	nodes++;
+	if ((limits.maxNodes > 0) && (nodes > limits.maxNodes)) {
+	    stopped = QueryStatus.nodeLimit;
+	    return (true);
+	}
+	// The clock is only read now and then ...
+	if ((limits.timeoutMillis > 0) && ((nodes & 0xFF) == 0)
+	    && (System.nanoTime() - deadline > 0)) {
+	    stopped = QueryStatus.timeout;
+	    return (true);
+	}
+	return (false);
+    }
+
+    // table -- Return the table for the given subgoal, filling it in with
+    // all of its answers, or with as many as can be found while any
+    // subgoal that it depends upon is still being evaluated.
+    public SubgoalTable table(Literal goal) {
+	String key = goal.variantKey();
+	SubgoalTable t = tables.get(key);
+	if (t == null) {
+	    t = new SubgoalTable(goal);
+	    tables.put(key, t);
+	}
+	if (t.complete)
+	    return (t);
+	if (t.onStack) {
+	    // A recursive call:  consume the answers found so far ...
+	    dependsOn(t.depth);
+	    return (t);
+	}
+	if ((t.leaderTable != null) && t.leaderTable.onStack
+	    && (t.leaderTable.pass == t.leaderPass)) {
+	    // Already evaluated during the current pass of its leader ...
+	    dependsOn(t.leaderTable.depth);
+	    return (t);
+	}
+	if (!t.evaluated) {
+	    t.evaluated = true;
+	    incomplete.add(t);
+	}
+	int firstMember = incomplete.indexOf(t);
+	t.onStack = true;
+	t.depth = stack.size();
+	t.leader = t.depth;
+	stack.add(t);
+	long before;
+	do {
+	    before = answersAdded;
+	    t.pass = ++passes;
+	    evaluate(t);
+	} while ((t.leader == t.depth) && (answersAdded != before)
+		 && (stopped == null));
+	stack.remove(stack.size() - 1);
+	t.onStack = false;
+	if (t.leader == t.depth) {
+	    // No new answers anywhere in the component, so it is complete ...
+	    for (int i = firstMember; i < incomplete.size(); i++)
+		incomplete.get(i).complete = true;
+	    incomplete.subList(firstMember, incomplete.size()).clear();
+	} else {
+	    // Wait for the leader to finish the component ...
+	    t.leaderTable = stack.get(t.leader);
+	    t.leaderPass = t.leaderTable.pass;
+	}
+	return (t);
+    }
+
+    // dependsOn -- Record that every subgoal being evaluated above the given
+    // stack position depends upon the subgoal at that position.
+    void dependsOn(int leader) {
+	for (int i = leader + 1; i < stack.size(); i++) {
+	    SubgoalTable t = stack.get(i);
+	    if (t.leader > leader)
+		t.leader = leader;
+	}
+    }
+
+    // evaluate -- Search for answers to the subgoal of the given table,
+    // using both facts and rules, and add them to the table.
+    void evaluate(SubgoalTable t) {
+	Literal goal = t.goal;
+	ProofProfiler.Node goalNode = (queryProfiler == null) ? null
+	    : queryProfiler.goalNode(ruleNode, goal);
+	for (Literal fact : kb.candidateFacts(goal, null, snapshot)) {
+	    if (overLimit())
+		return;
+	    if (queryProfiler != null)
+		queryProfiler.step(goalNode, stack.size());
+	    BindingList result = unify(goal, fact, new BindingList());
+	    if (queryProfiler != null)
+		queryProfiler.fact(goal, result != null);
+	    if (result != null)
+		addAnswer(t, goal.subst(result));
+	}
+	List<Rule> rules = kb.candidateRules(goal, null, snapshot);
+	if ((limits != null) && (limits.maxDepth > 0)
+	    && (t.depth >= limits.maxDepth) && !rules.isEmpty()) {
+	    // Rules would nest too deeply, so only facts are tried ...
+	    depthCut = true;
+	    return;
+	}
+	for (Rule r : rules) {
+	    if (overLimit())
+		return;
+	    if (queryProfiler != null)
+		queryProfiler.step(goalNode, stack.size());
+	    Rule.Frame frame = r.newFrame();
+	    BindingList result = unify(goal, r.renameConsequent(frame),
+				       new BindingList());
+	    if (queryProfiler != null)
+		queryProfiler.rule(r, result != null);
+	    if (result != null) {
+		ProofProfiler.Node caller = ruleNode;
+		if (queryProfiler != null)
+		    ruleNode = queryProfiler.ruleNode(goalNode, r);
+		for (BindingList proof
+			 : solveConjunction(r.renameAntecedents(frame), result))
+		    addAnswer(t, goal.subst(proof));
+		ruleNode = caller;
+	    }
+	}
+    }
+
+    // addAnswer -- Add the given answer to the given table, noting whether
+    // or not it is new.
+    void addAnswer(SubgoalTable t, Literal answer) {
+	if (t.addAnswer(answer))
+	    answersAdded++;
+    }
+
+    // solveConjunction -- Return binding lists for all of the proofs of the
+    // given list of goal literals, under the given binding list, found by
+    // solving each goal in turn through its subgoal table.
+    List<BindingList> solveConjunction(List<Literal> goals, BindingList bl) {
+	List<BindingList> current = new ArrayList<BindingList>();
+	current.add(bl);
+	for (int g = 0; g < goals.size(); g++) {
+	    Literal goal = goals.get(g);
+	    List<BindingList> next = new ArrayList<BindingList>();
+	    for (BindingList partial : current) {
+		Literal subgoal = goal.subst(partial);
+		SubgoalTable t = table(subgoal);
+		// The table may grow while its answers are being used ...
+		for (int i = 0; i < t.answers.size(); i++) {
+		    // Each use of an answer gets novel variables ...
+		    BindingList result = unify(subgoal, t.answer(i),
+					       new BindingList(partial));
+		    if (result != null)
+			next.add(result);
+		}
+	    }
+	    current = next;
+	    // A query stopped by a limit keeps only complete proofs ...
+	    if ((stopped != null) && (g + 1 < goals.size()))
+		return (new ArrayList<BindingList>());
+	}
+	return (current);
+    }
+
+
+}
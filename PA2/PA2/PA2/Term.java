@@ -6,7 +6,10 @@
 // for each of the three types of terms.  Methods are provided for identifying
 // all of the variables in a given term (including those appearing deep 
 // within function arguments) and for substituting variables in a term  with
-// their corresponding values, according to a given binding list.
+// their corresponding values, according to a given binding list.  Terms
+// are treated as immutable once they have been built or read, so whether
+// or not a term is ground is computed once and remembered, and ground terms
+// are shared, rather than copied, by substitution.
 //
 // David Noelle -- Tue Apr 10 17:08:45 PDT 2007
 //
@@ -21,6 +24,12 @@ public class Term {
     public Constant c;
     public Variable v;
     public Function f;
+    byte groundness = UNKNOWN;
+
+    // Values for the cached groundness of a term ...
+    static final byte UNKNOWN = 0;
+    static final byte GROUND = 1;
+    static final byte NONGROUND = 2;
 
     // Default constructor ...
     public Term() {
@@ -34,6 +43,7 @@ public class Term {
 	this.c = trm.c;
 	this.v = trm.v;
 	this.f = trm.f;
+	this.groundness = trm.groundness;
     }
 
     // Constructor for constants ...
@@ -60,6 +70,9 @@ public class Term {
     // equals -- Return true if and only if this term is the same as the
     // given term.
     public boolean equals(Term trm) {
+	if (trm == this)
+	    // Shared terms are trivially the same ...
+	    return (true);
 	if (((c == null) && (trm.c != null)) ||
 	    ((c != null) && (trm.c == null)) ||
 	    ((v == null) && (trm.v != null)) ||
@@ -76,6 +89,16 @@ public class Term {
 	}
     }
 
+    // isGround -- Return true if and only if this term contains no
+    // variables.
+    public boolean isGround() {
+	if (groundness == UNKNOWN) {
+	    boolean ground = (v == null) && ((f == null) || f.isGround());
+	    groundness = ground ? GROUND : NONGROUND;
+	}
+	return (groundness == GROUND);
+    }
+
     // allVariables -- Return a set of all the variables in this term.
     public Set<Variable> allVariables() {
 	Set<Variable> allVs = new HashSet<Variable>();
@@ -89,12 +112,13 @@ public class Term {
 	return (allVs);
     }
 
-    // subst -- Return a new Term object that is the result of applying the
-    // given binding list to this term.  Return null on error.
+    // subst -- Return a Term object that is the result of applying the
+    // given binding list to this term.  Ground terms, which are unchanged
+    // by substitution, are returned as they are.  Return null on error.
     public Term subst(BindingList bl) {
 	Term result;
-	if (c != null) {
-	    result = new Term(c);
+	if ((c != null) || ((f != null) && isGround())) {
+	    result = this;
 	} else {
 	    if (v != null) {
 		result = bl.groundValue(v);
@@ -115,9 +139,42 @@ public class Term {
 	return (result);
     }
 
+    // appendVariantKey -- Append a textual key for this term, after applying
+    // the given binding list (which may be null), to the given buffer.
+    // Variables are numbered in order of first appearance, using the given
+    // map, so that terms which are variants of each other have equal keys.
+    public void appendVariantKey(StringBuilder key, BindingList bl,
+				 Map<Integer, Integer> varNumbers) {
+	Term t = this;
+	while ((t.v != null) && (bl != null)) {
+	    Term value = bl.boundValue(t.v);
+	    if (value == null)
+		break;
+	    t = value;
+	}
+	if (t.c != null) {
+	    key.append(t.c.name);
+	} else if (t.v != null) {
+	    Integer n = varNumbers.get(t.v.id);
+	    if (n == null) {
+		n = varNumbers.size();
+		varNumbers.put(t.v.id, n);
+	    }
+	    key.append('?').append(n);
+	} else if (t.f != null) {
+	    key.append('(').append(t.f.func.name);
+	    for (Term arg : t.f.args) {
+		key.append(' ');
+		arg.appendVariantKey(key, bl, varNumbers);
+	    }
+	    key.append(')');
+	}
+    }
+
     // read -- Read a logical term from the given scanner, filling
     // in this object with the results.  Return false on error.
     public boolean read(Scanner inScanner) {
+	groundness = UNKNOWN;
 	inScanner.useDelimiter("[\\s]+");
 	if (inScanner.hasNext("\\(.*")) {
 	    // The next item is a function invocation ...
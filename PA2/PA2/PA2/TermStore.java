@@ -0,0 +1,115 @@
+//
+// TermStore
+//
+// This class implements a hash-consing store for ground terms.  Each
+// distinct ground term is represented by a single shared Term object, so
+// that the knowledge base holds its ground terms as a directed acyclic
+// graph rather than as a collection of separate trees.  Constants are
+// looked up by their symbol identifiers.  Function invocations are looked
+// up by their function name identifiers together with the (already shared)
+// objects for their arguments, so each lookup takes constant time per
+// node, regardless of the depth of the term.  Shared terms can be compared
+// by identity, and are never copied by substitution.
+//
+
+
+import java.util.*;
+
+
+public class TermStore {
+
+    // The key for a function invocation with shared arguments ...
+    static class FunctionKey {
+	int func;
+	Term[] args;
+
+	FunctionKey(int func, Term[] args) {
+	    this.func = func;
+	    this.args = args;
+	}
+
+	public int hashCode() {
+	    int h = func;
+	    for (Term arg : args)
+		h = 31 * h + System.identityHashCode(arg);
+	    return (h);
+	}
+
+	public boolean equals(Object obj) {
+	    if (!(obj instanceof FunctionKey))
+		return (false);
+	    FunctionKey k = (FunctionKey) obj;
+	    if ((k.func != func) || (k.args.length != args.length))
+		return (false);
+	    for (int i = 0; i < args.length; i++)
+		if (k.args[i] != args[i])
+		    return (false);
+	    return (true);
+	}
+    }
+
+    Map<Integer, Term> constants;
+    Map<FunctionKey, Term> functions;
+
+    // Default constructor ...
+    public TermStore() {
+	this.constants = new HashMap<Integer, Term>();
+	this.functions = new HashMap<FunctionKey, Term>();
+    }
+
+    // size -- Return the number of distinct ground terms in the store.
+    public int size() {
+	return (constants.size() + functions.size());
+    }
+
+    // intern -- Return the shared object for the given term, if it is
+    // ground.  Terms containing variables are returned as they are.
+    public Term intern(Term t) {
+	if (!t.isGround())
+	    return (t);
+	if (t.c != null) {
+	    Term shared = constants.get(t.c.id);
+	    if (shared == null) {
+		shared = t;
+		constants.put(t.c.id, shared);
+	    }
+	    return (shared);
+	}
+	Term[] args = new Term[t.f.args.size()];
+	for (int i = 0; i < args.length; i++)
+	    args[i] = intern(t.f.args.get(i));
+	FunctionKey key = new FunctionKey(t.f.func.id, args);
+	Term shared = functions.get(key);
+	if (shared == null) {
+	    if (sameArguments(t.f.args, args)) {
+		// The given term is already built from shared terms ...
+		shared = t;
+	    } else {
+		Function f = new Function(t.f.func);
+		f.args = Arrays.asList(args);
+		shared = new Term(f);
+	    }
+	    functions.put(key, shared);
+	}
+	return (shared);
+    }
+
+    // sameArguments -- Return true if the given list holds exactly the
+    // given objects.
+    static boolean sameArguments(List<Term> list, Term[] args) {
+	for (int i = 0; i < args.length; i++)
+	    if (list.get(i) != args[i])
+		return (false);
+	return (true);
+    }
+
+    // intern -- Replace the ground arguments of the given literal with
+    // their shared objects, returning the literal.
+    public Literal intern(Literal lit) {
+	for (int i = 0; i < lit.args.size(); i++)
+	    lit.args.set(i, intern(lit.args.get(i)));
+	return (lit);
+    }
+
+
+}
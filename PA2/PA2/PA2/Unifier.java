@@ -0,0 +1,186 @@
+//
+// Unifier
+//
+// This class implements unification of literals and terms, extending a
+// binding list in place.  Terms are dereferenced through the binding list
+// before they are compared, so a variable is only ever bound when it is
+// the unbound end of its chain, as in a union-find structure, and a chain
+// of several variables is compressed so that later lookups reach its end
+// in a single step (see BindingList).  Arguments are compared in a loop,
+// and nested function invocations are compared using an explicit stack of
+// pending pairs of terms, so that deep terms cannot overflow the Java
+// stack.  The occurs check, which prevents a variable from being bound to
+// a term that contains it, is optional, and is off by default, as is usual
+// in logic programming.  A unifier keeps no state between calls, so one
+// may be shared between threads.  On failure, the binding list is restored
+// to the state that it was in on entry.
+//
+
+
+import java.util.*;
+
+
+public class Unifier {
+
+    public boolean occursCheck;
+
+    // Default constructor ...
+    public Unifier() {
+	this.occursCheck = false;
+    }
+
+    // Constructor with the occurs check specified ...
+    public Unifier(boolean occursCheck) {
+	this.occursCheck = occursCheck;
+    }
+
+    // unify -- Return the most general unifier for the two provided
+    // literals, or null if no unification is possible.
+    public BindingList unify(Literal lit1, Literal lit2, BindingList bl) {
+	if ((bl == null) || (lit1.pred.id != lit2.pred.id))
+	    return (null);
+	return (unify(lit1.args, lit2.args, bl));
+    }
+
+    // unify -- Return the most general unifier for the two provided terms,
+    // or null if no unification is possible.
+    public BindingList unify(Term t1, Term t2, BindingList bl) {
+	if (bl == null)
+	    return (null);
+	int mark = bl.mark();
+	if (unifyTerms(t1, t2, bl))
+	    return (bl);
+	bl.undo(mark);
+	return (null);
+    }
+
+    // unify -- Return the most general unifier for the two provided lists
+    // of terms, or null if no unification is possible.
+    public BindingList unify(List<Term> ts1, List<Term> ts2, BindingList bl) {
+	if ((bl == null) || (ts1.size() != ts2.size()))
+	    return (null);
+	int mark = bl.mark();
+	for (int i = 0; i < ts1.size(); i++) {
+	    if (!unifyTerms(ts1.get(i), ts2.get(i), bl)) {
+		bl.undo(mark);
+		return (null);
+	    }
+	}
+	return (bl);
+    }
+
+    // deref -- Return the end of the chain of bindings starting at the
+    // given term, compressing the chain if it is longer than one step.
+    static Term deref(Term t, BindingList bl) {
+	if (t.v == null)
+	    return (t);
+	Term value = bl.boundValue(t.v);
+	if (value == null)
+	    return (t);
+	if (value.v == null)
+	    return (value);
+	Term end = value;
+	while (end.v != null) {
+	    Term next = bl.boundValue(end.v);
+	    if (next == null)
+		break;
+	    end = next;
+	}
+	// Point every variable on the chain at its end ...
+	for (Term link = t; link != end; ) {
+	    Term next = bl.boundValue(link.v);
+	    bl.compress(link.v, end);
+	    link = next;
+	}
+	return (end);
+    }
+
+    // unifyTerms -- Unify the two given terms, extending the binding list.
+    // Return false on failure, possibly leaving some bindings behind.
+    boolean unifyTerms(Term t1, Term t2, BindingList bl) {
+	Term x = deref(t1, bl);
+	Term y = deref(t2, bl);
+	if (x == y)
+	    return (true);
+	if ((x.f == null) || (y.f == null))
+	    return (unifyAtoms(x, y, bl));
+	// Both are function invocations, so compare them a pair at a time ...
+	Term[] stack = new Term[16];
+	int top = 0;
+	stack[top++] = x;
+	stack[top++] = y;
+	while (top > 0) {
+	    y = deref(stack[--top], bl);
+	    x = deref(stack[--top], bl);
+	    if (x == y)
+		continue;
+	    if ((x.f == null) || (y.f == null)) {
+		if (!unifyAtoms(x, y, bl))
+		    return (false);
+		continue;
+	    }
+	    Function f1 = x.f;
+	    Function f2 = y.f;
+	    int arity = f1.args.size();
+	    if ((f1.func.id != f2.func.id) || (arity != f2.args.size()))
+		return (false);
+	    if (top + 2 * arity > stack.length)
+		stack = Arrays.copyOf(stack, Math.max(2 * stack.length,
+						      top + 2 * arity));
+	    // Push in reverse, so that arguments are compared left to right ...
+	    for (int i = arity - 1; i >= 0; i--) {
+		stack[top++] = f1.args.get(i);
+		stack[top++] = f2.args.get(i);
+	    }
+	}
+	return (true);
+    }
+
+    // unifyAtoms -- Unify two dereferenced terms, at least one of which is
+    // not a function invocation.
+    boolean unifyAtoms(Term x, Term y, BindingList bl) {
+	if (x.v != null) {
+	    if (y.v == null)
+		return (bind(x.v, y, bl));
+	    if (y.v.id == x.v.id)
+		return (true);
+	    // Of two variables, the one from the second term is bound, so
+	    // that the variables of a goal remain at the ends of chains ...
+	    return (bind(y.v, x, bl));
+	}
+	if (y.v != null)
+	    return (bind(y.v, x, bl));
+	return ((x.c != null) && (y.c != null) && (x.c.id == y.c.id));
+    }
+
+    // bind -- Bind the given unbound variable to the given dereferenced
+    // term, unless the occurs check fails.
+    boolean bind(Variable v, Term t, BindingList bl) {
+	if (occursCheck && (t.f != null) && occurs(v, t, bl))
+	    return (false);
+	bl.addVariableBinding(v, t);
+	return (true);
+    }
+
+    // occurs -- Return true if the given variable appears in the given
+    // term, under the given bindings.
+    static boolean occurs(Variable v, Term t, BindingList bl) {
+	if (t.isGround())
+	    return (false);
+	Deque<Term> open = new ArrayDeque<Term>();
+	open.push(t);
+	while (!open.isEmpty()) {
+	    Term u = deref(open.pop(), bl);
+	    if (u.v != null) {
+		if (u.v.id == v.id)
+		    return (true);
+	    } else if ((u.f != null) && !u.isGround()) {
+		for (Term arg : u.f.args)
+		    open.push(arg);
+	    }
+	}
+	return (false);
+    }
+
+
+}
@@ -0,0 +1,121 @@
+//
+// UnifyBenchmark
+//
+// This class provides a "main" method that measures the speed of the
+// Unifier on several kinds of terms:  deep terms (functions nested many
+// levels deep), wide terms (functions with many arguments), pairs of terms
+// that only differ at their deepest point (so that unification fails late),
+// and long chains of variables bound to variables.  Each case is run with
+// and without the occurs check, and the average time per unification is
+// reported.  The depth and width of the terms may be given as the first
+// and second command line arguments.
+//
+
+
+import java.util.*;
+
+
+public class UnifyBenchmark {
+
+    // deep -- Return a term with the given number of nested functions
+    // around the given innermost term.
+    static Term deep(int depth, Term inner) {
+	Term t = inner;
+	for (int i = 0; i < depth; i++) {
+	    Function f = new Function(new FunctionName("f"));
+	    f.args.add(t);
+	    f.args.add(new Term(new Constant("c" + (i % 10))));
+	    t = new Term(f);
+	}
+	return (t);
+    }
+
+    // wide -- Return a function with the given number of arguments, each
+    // either a constant or a variable with the given prefix.
+    static Term wide(int width, String prefix, boolean variables) {
+	Function f = new Function(new FunctionName("g"));
+	for (int i = 0; i < width; i++) {
+	    if (variables && (i % 2 == 0))
+		f.args.add(new Term(new Variable(prefix + i)));
+	    else
+		f.args.add(new Term(new Constant("k" + i)));
+	}
+	return (new Term(f));
+    }
+
+    // time -- Return the average time, in nanoseconds, taken to unify the
+    // two terms from scratch, and check the expected outcome.
+    static double time(Unifier u, Term t1, Term t2, boolean expected,
+		       int repetitions) {
+	// Warm up first ...
+	for (int i = 0; i < repetitions; i++)
+	    u.unify(t1, t2, new BindingList());
+	long start = System.nanoTime();
+	boolean result = false;
+	for (int i = 0; i < repetitions; i++)
+	    result = (u.unify(t1, t2, new BindingList()) != null);
+	long nanos = System.nanoTime() - start;
+	if (result != expected)
+	    System.out.println("UNEXPECTED RESULT");
+	return ((double) nanos / repetitions);
+    }
+
+    // report -- Print the times for a case, with and without the occurs
+    // check.
+    static void report(String name, Term t1, Term t2, boolean expected,
+		       int repetitions) {
+	double plain = time(new Unifier(false), t1, t2, expected, repetitions);
+	double checked = time(new Unifier(true), t1, t2, expected, repetitions);
+	System.out.printf("%-28s %10.1f %10.1f\n", name, plain / 1e3,
+			  checked / 1e3);
+    }
+
+    public static void main(String[] args) {
+	int depth = 1000;
+	int width = 1000;
+	if (args.length > 0)
+	    depth = Integer.parseInt(args[0]);
+	if (args.length > 1)
+	    width = Integer.parseInt(args[1]);
+	int repetitions = 2000;
+
+	System.out.printf("%-28s %10s %10s\n", "case (us per unification)",
+			  "plain", "occurs");
+	// Deep terms, one with a variable at the bottom ...
+	Term deepGround = deep(depth, new Term(new Constant("bottom")));
+	Term deepOpen = deep(depth, new Term(new Variable("?bottom")));
+	report("deep, succeeds", deepOpen, deepGround, true, repetitions);
+	Term deepOther = deep(depth, new Term(new Constant("other")));
+	report("deep, fails at bottom", deepGround, deepOther, false,
+	       repetitions);
+	// Deep terms that bind a variable to a large term ...
+	Function outer = new Function(new FunctionName("h"));
+	outer.args.add(new Term(new Variable("?whole")));
+	outer.args.add(new Term(new Variable("?whole")));
+	Function pair = new Function(new FunctionName("h"));
+	pair.args.add(deepOpen);
+	pair.args.add(deepGround);
+	report("deep, variable to term", new Term(outer), new Term(pair), true,
+	       repetitions);
+	// Wide terms ...
+	report("wide, succeeds", wide(width, "?a", true),
+	       wide(width, "?b", false), true, repetitions);
+	report("wide, variables both sides", wide(width, "?a", true),
+	       wide(width, "?b", true), true, repetitions);
+	// A chain of variables:  (p ?x0 ?x1 ... ?xn) against
+	// (p ?x1 ?x2 ... end), which makes them all one variable, and then
+	// binds it to a constant ...
+	Function left = new Function(new FunctionName("p"));
+	Function right = new Function(new FunctionName("p"));
+	for (int i = 0; i < width; i++) {
+	    left.args.add(new Term(new Variable("?x" + i)));
+	    if (i + 1 < width)
+		right.args.add(new Term(new Variable("?x" + (i + 1))));
+	    else
+		right.args.add(new Term(new Constant("end")));
+	}
+	report("variable chain", new Term(left), new Term(right), true,
+	       repetitions);
+    }
+
+}
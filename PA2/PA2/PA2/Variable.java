@@ -2,7 +2,15 @@
 // Variable
 //
 // This class implements a logical variable.  This is simply a symbol.  By
-// convention, all variable names must start with a question mark.
+// convention, all variable names must start with a question mark.  Novel
+// variables, such as those made when standardizing rules apart, are given
+// negative identifiers that are never interned, and their names are only
+// generated if they are needed for output.  Novel identifiers are handed
+// out in turn, and once all of the negative integers have been used they
+// are handed out again from the start, never wrapping around to the
+// identifiers of interned symbols.  By then, the variables that held them
+// have long since been renamed or discarded:  stored rules and answers are
+// always renamed apart before they are used.
 //
 // David Noelle -- Tue Apr 10 17:08:45 PDT 2007
 //
@@ -12,29 +20,61 @@ public class Variable extends Symbol {
 
     // For making arbitrary novel symbols ...
     static String gensymPrefix = "?VAR-";
-    static int gensymCounter = 1;
+    static java.util.concurrent.atomic.AtomicLong gensymCounter
+	= new java.util.concurrent.atomic.AtomicLong(1);
 
     // Default constructor ...
     public Variable() {
 	this.name = "?NULL";
+	this.id = table.intern(this.name);
     }
 
     // Constructor with symbol name specified ...
     public Variable(String name) {
 	if (name.length() == 0) {
 	    // This is a request for a novel variable ...
-	    this.name = 
-		String.format("%s%04d", gensymPrefix, gensymCounter);
-	    gensymCounter++;
+	    this.name = null;
+	    this.id = reserve(1);
 	} else {
 	    if (name.charAt(0) != '?') {
 		this.name = "?" + name;
 	    } else {
 		this.name = name;
 	    }
+	    this.id = table.intern(this.name);
 	}
     }
 
+    // Constructor for a novel variable with the given identifier, which
+    // should have been obtained from "reserve" ...
+    Variable(int id) {
+	this.name = null;
+	this.id = id;
+    }
+
+    // reserve -- Reserve identifiers for the given number of novel
+    // variables, returning the first.  The rest follow it in descending
+    // order.  A block that would run past the last identifier is taken
+    // from the start instead.
+    static int reserve(int count) {
+	while (true) {
+	    long current = gensymCounter.get();
+	    long first = current;
+	    if (first + count - 1 > Integer.MAX_VALUE)
+		first = 1;
+	    if (gensymCounter.compareAndSet(current, first + count))
+		return ((int) -first);
+	}
+    }
+
+    // getName -- Return the name of this variable, generating one for a
+    // novel variable if necessary.
+    public String getName() {
+	if (name == null)
+	    name = String.format("%s%04d", gensymPrefix, -id);
+	return (name);
+    }
+
 
 }
 
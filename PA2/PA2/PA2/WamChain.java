@@ -0,0 +1,106 @@
+//
+// WamChain
+//
+// This class implements backward chaining by compiling the knowledge base
+// into code for a Warren-style abstract machine (see WamProgram and
+// WamMachine), rather than by interpreting its literals.  The search is the
+// same as that of BackwardChain:  depth-first and left-to-right, trying
+// facts before rules, each in knowledge base order.  The answers are also
+// the same, except that their binding lists only hold bindings for the
+// variables of the query, and not for intermediate variables.  The
+// knowledge base is compiled when the first query is asked, and again
+// whenever facts or rules have been added or removed since.  A query finds
+// the program of the latest version without taking any lock.  The
+// knowledge base is compiled from a snapshot, so it may change meanwhile,
+// and a query keeps running the program that it started with, so the
+// compiled program serves as its snapshot of the knowledge base:  facts and
+// rules added or removed while it runs are not seen.  As with the
+// underlying machine, no occurs check is made.
+//
+
+
+import java.util.*;
+
+
+public class WamChain extends BackwardChain {
+
+    volatile WamProgram program;
+
+    // Default constructor ...
+    public WamChain() {
+	super();
+	this.program = null;
+    }
+
+    // Constructor for reasoning over an existing knowledge base ...
+    public WamChain(KnowledgeBase kb) {
+	super(kb);
+	this.program = null;
+    }
+
+    // current -- Return the compiled knowledge base, if it has been
+    // compiled and is of the latest version, or null.
+    WamProgram current() {
+	WamProgram prog = program;
+	return (((prog != null) && (prog.version == kb.modifications)) ? prog
+		: null);
+    }
+
+    // program -- Return the compiled knowledge base, compiling it if it
+    // has changed.
+    public WamProgram program() {
+	WamProgram prog = current();
+	if (prog != null)
+	    return (prog);
+	// Only one query compiles at a time, but the knowledge base is read
+	// as a snapshot, so changes to it are not held off meanwhile ...
+	synchronized (this) {
+	    prog = current();
+	    if (prog == null) {
+		prog = new WamProgram(kb);
+		program = prog;
+	    }
+	    return (prog);
+	}
+    }
+
+    // answers -- Return a lazy iterator over all of the proofs of the
+    // given list of goal literals, under the constraints of the given
+    // binding list, found by running compiled code.
+    public Answers answers(List<Literal> goals, final BindingList bl) {
+	List<Literal> bound = new ArrayList<Literal>(goals.size());
+	for (Literal goal : goals)
+	    bound.add(goal.subst(bl));
+	WamProgram prog = program();
+	final WamMachine machine = new WamMachine(prog, prog.compileQuery(bound));
+	return (new Answers() {
+		BindingList pending = null;
+		boolean exhausted = false;
+
+		public boolean hasNext() {
+		    if ((pending == null) && !exhausted) {
+			if (machine.next())
+			    pending = machine.answer(bl);
+			else
+			    exhausted = true;
+		    }
+		    return (pending != null);
+		}
+
+		public BindingList next() {
+		    if (!hasNext())
+			throw new NoSuchElementException();
+		    BindingList answer = pending;
+		    pending = null;
+		    return (answer);
+		}
+
+		public void close() {
+		    pending = null;
+		    exhausted = true;
+		}
+	    });
+    }
+
+
+}
@@ -0,0 +1,434 @@
+//
+// WamMachine
+//
+// This class implements the abstract machine that executes the code
+// produced by WamProgram.  Terms are built on a heap of tagged cells, held
+// in a pair of parallel integer arrays.  A REF cell is a variable, and it
+// is unbound if it refers to itself.  A CON cell holds the interned
+// identifier of a constant.  A STR cell refers to a FUN cell, holding a
+// functor index, which is followed by the cells of the arguments.  All
+// variables live on the heap, and registers and environment frames hold
+// heap addresses, so no variable can outlive the cell it refers to.
+// Bindings overwrite unbound cells and are recorded on a trail.  When a
+// call has more than one candidate clause, a choice point records the
+// registers, the heap top, the trail top, and the continuation, so that
+// the next clause can be tried after a failure.  The machine runs one
+// query, and each call to "next" resumes it to find another answer.
+//
+
+
+import java.util.*;
+
+
+public class WamMachine {
+
+    // Cell tags ...
+    static final int REF = 0;
+    static final int CON = 1;
+    static final int STR = 2;
+    static final int FUN = 3;
+
+    // An environment frame, holding the permanent variables of a rule ...
+    static class Environment {
+	Environment ce;        // continuation environment
+	int cp;                // continuation code address
+	int[] y;
+
+	Environment(Environment ce, int cp, int size) {
+	    this.ce = ce;
+	    this.cp = cp;
+	    this.y = new int[size];
+	}
+    }
+
+    // A choice point, recording the clauses left to try for a call ...
+    static class ChoicePoint {
+	ChoicePoint prev;
+	int[] args;
+	Environment e;
+	int cp;
+	int h;
+	int tr;
+	int[] alternatives;
+	int next;
+    }
+
+    // Code addresses at or above this belong to the query segment ...
+    static final int QUERY_BASE = 1 << 30;
+
+    WamProgram program;
+    WamProgram.Query query;
+    int[] tag = new int[1024];
+    int[] val = new int[1024];
+    int h = 0;                 // heap top
+    int[] trail = new int[256];
+    int tr = 0;                // trail top
+    int[] regs;
+    int[] pdl = new int[64];   // push-down list for unification
+    Environment e = null;
+    ChoicePoint b = null;
+    int p;                     // next instruction
+    int cp;                    // continuation
+    int s;                     // next structure argument, in read mode
+    boolean writeMode;
+    boolean started = false;
+    public long inferences = 0;
+
+    // Constructor for a query over a compiled program ...
+    public WamMachine(WamProgram program, WamProgram.Query query) {
+	this.program = program;
+	this.query = query;
+	this.regs = new int[Math.max(program.registers, query.registers)];
+	this.p = QUERY_BASE;
+	this.cp = -1;
+    }
+
+    // next -- Run until the next answer is found, returning false if there
+    // are no more.
+    public boolean next() {
+	if (started && !backtrack())
+	    return (false);
+	started = true;
+	return (run());
+    }
+
+    // answer -- Return the bindings of the query variables, for the answer
+    // just found, as a binding list added to the given one.
+    public BindingList answer(BindingList bl) {
+	BindingList result = new BindingList(bl);
+	Map<Integer, Variable> unbound = new HashMap<Integer, Variable>();
+	// Query variables that are still unbound stand for themselves ...
+	for (int i = 0; i < query.variables.size(); i++) {
+	    int a = deref(e.y[i]);
+	    if ((tag[a] == REF) && !unbound.containsKey(a))
+		unbound.put(a, query.variables.get(i));
+	}
+	for (int i = 0; i < query.variables.size(); i++) {
+	    Variable v = query.variables.get(i);
+	    Term value = readTerm(e.y[i], unbound);
+	    if ((value.v == null) || !value.v.equals(v))
+		result.addVariableBinding(v, value);
+	}
+	return (result);
+    }
+
+    // readTerm -- Return the term on the heap at the given address.
+    // Unbound variables become novel variables.
+    Term readTerm(int a, Map<Integer, Variable> unbound) {
+	a = deref(a);
+	switch (tag[a]) {
+	case CON:
+	    Constant c = program.constant(val[a], query);
+	    return (new Term((c != null) ? c
+			     : new Constant(Symbol.table.name(val[a]))));
+	case STR:
+	    int fa = val[a];
+	    int index = val[fa];
+	    Function f = new Function();
+	    f.func = program.functorName(index, query);
+	    int arity = program.functorArity(index, query);
+	    for (int i = 1; i <= arity; i++)
+		f.args.add(readTerm(fa + i, unbound));
+	    return (new Term(f));
+	default:
+	    Variable v = unbound.get(a);
+	    if (v == null) {
+		v = new Variable("");
+		unbound.put(a, v);
+	    }
+	    return (new Term(v));
+	}
+    }
+
+    // push -- Append a cell to the heap, returning its address.
+    int push(int t, int v) {
+	if (h == tag.length) {
+	    tag = Arrays.copyOf(tag, h * 2);
+	    val = Arrays.copyOf(val, h * 2);
+	}
+	tag[h] = t;
+	val[h] = v;
+	return (h++);
+    }
+
+    // newVariable -- Append an unbound variable to the heap.
+    int newVariable() {
+	return (push(REF, h));
+    }
+
+    // deref -- Follow bound variables from the given address.
+    int deref(int a) {
+	while ((tag[a] == REF) && (val[a] != a))
+	    a = val[a];
+	return (a);
+    }
+
+    // bind -- Bind the unbound variable at the first address to the term
+    // at the second, recording the binding on the trail.
+    void bind(int a, int to) {
+	if (tr == trail.length)
+	    trail = Arrays.copyOf(trail, tr * 2);
+	trail[tr++] = a;
+	if (tag[to] == REF) {
+	    val[a] = to;
+	} else {
+	    tag[a] = tag[to];
+	    val[a] = val[to];
+	}
+    }
+
+    // bindConstant -- Bind the unbound variable at the given address to
+    // the given constant.
+    void bindConstant(int a, int c) {
+	if (tr == trail.length)
+	    trail = Arrays.copyOf(trail, tr * 2);
+	trail[tr++] = a;
+	tag[a] = CON;
+	val[a] = c;
+    }
+
+    // unwind -- Undo the bindings made since the trail had the given size.
+    void unwind(int mark) {
+	while (tr > mark) {
+	    int a = trail[--tr];
+	    tag[a] = REF;
+	    val[a] = a;
+	}
+    }
+
+    // unify -- Unify the terms at the two addresses, returning false if
+    // that is not possible.  No occurs check is made.
+    boolean unify(int a1, int a2) {
+	int top = 0;
+	pdl[top++] = a1;
+	pdl[top++] = a2;
+	while (top > 0) {
+	    int d2 = deref(pdl[--top]);
+	    int d1 = deref(pdl[--top]);
+	    if (d1 == d2)
+		continue;
+	    if ((tag[d1] == REF) && (tag[d2] == REF)) {
+		// Bind the younger variable to the older one ...
+		if (d1 < d2)
+		    bind(d2, d1);
+		else
+		    bind(d1, d2);
+	    } else if (tag[d1] == REF) {
+		bind(d1, d2);
+	    } else if (tag[d2] == REF) {
+		bind(d2, d1);
+	    } else if (tag[d1] != tag[d2]) {
+		return (false);
+	    } else if (tag[d1] == CON) {
+		if (val[d1] != val[d2])
+		    return (false);
+	    } else {
+		int f1 = val[d1];
+		int f2 = val[d2];
+		if (val[f1] != val[f2])
+		    return (false);
+		int arity = program.functorArity(val[f1], query);
+		if (top + 2 * arity > pdl.length)
+		    pdl = Arrays.copyOf(pdl, Math.max(pdl.length * 2,
+						     top + 2 * arity));
+		for (int i = 1; i <= arity; i++) {
+		    pdl[top++] = f1 + i;
+		    pdl[top++] = f2 + i;
+		}
+	    }
+	}
+	return (true);
+    }
+
+    // getVar -- Return the heap address held by a variable operand.
+    int getVar(int op) {
+	return ((op >= 0) ? e.y[op] : regs[-op - 1]);
+    }
+
+    // setVar -- Store a heap address in a variable operand.
+    void setVar(int op, int a) {
+	if (op >= 0)
+	    e.y[op] = a;
+	else
+	    regs[-op - 1] = a;
+    }
+
+    // dispatch -- Transfer control to the candidate clauses of the given
+    // procedure, pushing a choice point if there are several.  Return
+    // false if there are none.
+    boolean dispatch(int index) {
+	WamProgram.Procedure proc = program.procedure(index, query);
+	Long key = null;
+	if (proc.arity > 0) {
+	    int a = deref(regs[0]);
+	    if (tag[a] == CON)
+		key = WamProgram.switchKey(val[a], false);
+	    else if (tag[a] == STR)
+		key = WamProgram.switchKey(val[val[a]], true);
+	}
+	int[] alternatives = proc.select(key);
+	if (alternatives.length == 0)
+	    return (false);
+	if (alternatives.length > 1) {
+	    ChoicePoint choice = new ChoicePoint();
+	    choice.prev = b;
+	    choice.args = Arrays.copyOf(regs, proc.arity);
+	    choice.e = e;
+	    choice.cp = cp;
+	    choice.h = h;
+	    choice.tr = tr;
+	    choice.alternatives = alternatives;
+	    choice.next = 1;
+	    b = choice;
+	}
+	inferences++;
+	p = alternatives[0];
+	return (true);
+    }
+
+    // backtrack -- Resume the most recent choice point with its next
+    // clause, returning false if there are no choice points left.
+    boolean backtrack() {
+	if (b == null)
+	    return (false);
+	unwind(b.tr);
+	h = b.h;
+	e = b.e;
+	cp = b.cp;
+	System.arraycopy(b.args, 0, regs, 0, b.args.length);
+	p = b.alternatives[b.next++];
+	if (b.next == b.alternatives.length)
+	    // The last clause is being tried, so the choice point is done ...
+	    b = b.prev;
+	inferences++;
+	return (true);
+    }
+
+    // run -- Execute instructions until HALT, returning true, or until a
+    // failure with no choice points left, returning false.
+    boolean run() {
+	int[] programWords = program.code.words;
+	int[] queryWords = query.code.words;
+	while (true) {
+	    int[] words;
+	    int i;
+	    if (p >= QUERY_BASE) {
+		words = queryWords;
+		i = p - QUERY_BASE;
+	    } else {
+		words = programWords;
+		i = p;
+	    }
+	    int op = words[i];
+	    int x = words[i + 1];
+	    int y = words[i + 2];
+	    p += WamProgram.WIDTH;
+	    boolean ok = true;
+	    int a;
+	    switch (op) {
+	    case WamProgram.GET_VAR:
+		setVar(x, regs[y]);
+		break;
+	    case WamProgram.GET_VAL:
+		ok = unify(getVar(x), regs[y]);
+		break;
+	    case WamProgram.GET_CON:
+		a = deref(regs[y]);
+		if (tag[a] == REF)
+		    bindConstant(a, x);
+		else
+		    ok = (tag[a] == CON) && (val[a] == x);
+		break;
+	    case WamProgram.GET_STR:
+		a = deref(regs[y]);
+		if (tag[a] == REF) {
+		    int fa = push(FUN, x);
+		    if (tr == trail.length)
+			trail = Arrays.copyOf(trail, tr * 2);
+		    trail[tr++] = a;
+		    tag[a] = STR;
+		    val[a] = fa;
+		    writeMode = true;
+		} else if ((tag[a] == STR) && (val[val[a]] == x)) {
+		    s = val[a] + 1;
+		    writeMode = false;
+		} else {
+		    ok = false;
+		}
+		break;
+	    case WamProgram.UNIFY_VAR:
+		if (writeMode)
+		    setVar(x, newVariable());
+		else
+		    setVar(x, s++);
+		break;
+	    case WamProgram.UNIFY_VAL:
+		if (writeMode)
+		    push(REF, getVar(x));
+		else
+		    ok = unify(getVar(x), s++);
+		break;
+	    case WamProgram.UNIFY_CON:
+		if (writeMode) {
+		    push(CON, x);
+		} else {
+		    a = deref(s++);
+		    if (tag[a] == REF)
+			bindConstant(a, x);
+		    else
+			ok = (tag[a] == CON) && (val[a] == x);
+		}
+		break;
+	    case WamProgram.PUT_VAR:
+		a = newVariable();
+		setVar(x, a);
+		regs[y] = a;
+		break;
+	    case WamProgram.PUT_VAL:
+		regs[y] = getVar(x);
+		break;
+	    case WamProgram.PUT_CON:
+		regs[y] = push(CON, x);
+		break;
+	    case WamProgram.PUT_STR:
+		regs[y] = push(STR, h + 1);
+		push(FUN, x);
+		break;
+	    case WamProgram.SET_VAR:
+		setVar(x, newVariable());
+		break;
+	    case WamProgram.SET_VAL:
+		push(REF, getVar(x));
+		break;
+	    case WamProgram.SET_CON:
+		push(CON, x);
+		break;
+	    case WamProgram.ALLOCATE:
+		e = new Environment(e, cp, x);
+		break;
+	    case WamProgram.DEALLOCATE:
+		cp = e.cp;
+		e = e.ce;
+		break;
+	    case WamProgram.CALL:
+		cp = p;
+		ok = dispatch(x);
+		break;
+	    case WamProgram.EXECUTE:
+		ok = dispatch(x);
+		break;
+	    case WamProgram.PROCEED:
+		p = cp;
+		break;
+	    case WamProgram.HALT:
+		return (true);
+	    default:
+		throw new IllegalStateException("Bad opcode " + op);
+	    }
+	    if (!ok && !backtrack())
+		return (false);
+	}
+    }
+
+
+}
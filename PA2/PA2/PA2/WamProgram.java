@@ -0,0 +1,516 @@
+//
+// WamProgram
+//
+// This class implements a compiler from the facts and rules of a knowledge
+// base into instructions for a small abstract machine, in the style of the
+// Warren Abstract Machine (WAM), along with the compiled code itself.  Each
+// clause becomes a block of instructions.  "Get" and "unify" instructions
+// match the arguments of a call against the head of the clause, "put" and
+// "set" instructions build the arguments of each antecedent, and "call" and
+// "execute" instructions pass control to the procedure for its predicate.
+// Rules allocate an environment frame holding their variables, so that they
+// survive across calls.  The clauses of each procedure are kept in
+// knowledge base order, facts before rules, and each procedure has a switch
+// table on the principal symbol of its first argument, so that a call only
+// tries the clauses that could possibly match.  Instructions are packed into
+// a flat integer array, three integers to an instruction:  an opcode and up
+// to two operands.  Variable operands refer either to a permanent variable
+// in the current environment (non-negative) or to a register (negative).
+// Queries are compiled into code segments of their own, which are not kept
+// with the program.  A query keeps its own variables and registers, and its
+// own table of any procedures and symbols that the program lacks, so the
+// program is never changed once compiled, and many queries may be compiled
+// and run against it at once.  The knowledge base is read as a snapshot,
+// so it may change while it is compiled, and the program records the
+// version it reflects.  The program does not change if the knowledge base
+// does afterwards, so it should be compiled again in that case.
+//
+
+
+import java.util.*;
+
+
+public class WamProgram {
+
+    // Opcodes ...
+    static final int GET_VAR = 1;      // var, reg
+    static final int GET_VAL = 2;      // var, reg
+    static final int GET_CON = 3;      // symbol, reg
+    static final int GET_STR = 4;      // functor, reg
+    static final int UNIFY_VAR = 5;    // var
+    static final int UNIFY_VAL = 6;    // var
+    static final int UNIFY_CON = 7;    // symbol
+    static final int PUT_VAR = 8;      // var, reg
+    static final int PUT_VAL = 9;      // var, reg
+    static final int PUT_CON = 10;     // symbol, reg
+    static final int PUT_STR = 11;     // functor, reg
+    static final int SET_VAR = 12;     // var
+    static final int SET_VAL = 13;     // var
+    static final int SET_CON = 14;     // symbol
+    static final int ALLOCATE = 15;    // number of permanent variables
+    static final int DEALLOCATE = 16;
+    static final int CALL = 17;        // procedure
+    static final int EXECUTE = 18;     // procedure
+    static final int PROCEED = 19;
+    static final int HALT = 20;
+
+    // Width of every instruction, in integers ...
+    static final int WIDTH = 3;
+
+    // A block of instructions ...
+    public static class Code {
+	int[] words = new int[3 * 64];
+	int size = 0;
+
+	// emit -- Append an instruction, returning its address.
+	int emit(int op, int a, int b) {
+	    if (size + WIDTH > words.length)
+		words = Arrays.copyOf(words, words.length * 2);
+	    words[size] = op;
+	    words[size + 1] = a;
+	    words[size + 2] = b;
+	    size += WIDTH;
+	    return (size - WIDTH);
+	}
+    }
+
+    // A compiled query, with the variables held by its environment, and
+    // the procedures and symbols it uses that the program lacks, numbered
+    // after those of the program ...
+    public static class Query {
+	Code code = new Code();
+	List<Variable> variables = new ArrayList<Variable>();
+	int registers = 1;         // number of registers needed
+	List<Procedure> procedures = new ArrayList<Procedure>();
+	Map<Long, Integer> procedureIndex = new HashMap<Long, Integer>();
+	List<FunctionName> functors = new ArrayList<FunctionName>();
+	List<Integer> functorArity = new ArrayList<Integer>();
+	Map<Long, Integer> functorIndex = new HashMap<Long, Integer>();
+	Map<Integer, Constant> constants = new HashMap<Integer, Constant>();
+    }
+
+    // The state of the clause or query being compiled ...
+    static class Scope {
+	Map<Integer, Integer> varOperand = new HashMap<Integer, Integer>();
+	Set<Integer> seen = new HashSet<Integer>();
+	boolean permanent;
+	int nextRegister;
+	Query query;               // null for a clause of the program
+
+	Scope(boolean permanent, int arity, Query query) {
+	    this.permanent = permanent;
+	    this.nextRegister = arity;
+	    this.query = query;
+	}
+    }
+
+    // The compiled clauses for a single predicate ...
+    static class Procedure {
+	Predicate pred;
+	int arity;
+	List<Integer> entries = new ArrayList<Integer>();
+	List<Long> keys = new ArrayList<Long>();    // null for variables
+	int[] all;                 // every clause
+	int[] unkeyed;             // clauses with a variable first argument
+	Map<Long, int[]> switchTable;
+
+	// select -- Return the entry points of the clauses that might match
+	// a call with a first argument having the given key, which is null
+	// for an unbound variable.
+	int[] select(Long key) {
+	    if ((key == null) || (arity == 0))
+		return (all);
+	    int[] found = switchTable.get(key);
+	    return ((found == null) ? unkeyed : found);
+	}
+    }
+
+    public Code code;
+    List<Procedure> procedures;
+    Map<Long, Integer> procedureIndex;
+    List<FunctionName> functors;
+    List<Integer> functorArity;
+    Map<Long, Integer> functorIndex;
+    Map<Integer, Constant> constants;
+    int registers;             // number of registers needed
+    public long version;       // version of the knowledge base compiled
+
+    // Default constructor ...
+    public WamProgram() {
+	this.code = new Code();
+	this.procedures = new ArrayList<Procedure>();
+	this.procedureIndex = new HashMap<Long, Integer>();
+	this.functors = new ArrayList<FunctionName>();
+	this.functorArity = new ArrayList<Integer>();
+	this.functorIndex = new HashMap<Long, Integer>();
+	this.constants = new HashMap<Integer, Constant>();
+	this.registers = 1;
+	this.version = -1;
+    }
+
+    // Constructor compiling the latest version of the given knowledge base,
+    // read as a snapshot ...
+    public WamProgram(KnowledgeBase kb) {
+	this();
+	long snapshot = kb.openSnapshot();
+	try {
+	    compile(kb, snapshot);
+	} finally {
+	    kb.closeSnapshot(snapshot);
+	}
+    }
+
+    // compile -- Compile all of the facts and then all of the rules live
+    // at the given version of the given knowledge base, which should be
+    // held open as a snapshot, and build the switch tables.
+    public void compile(KnowledgeBase kb, long version) {
+	List<Literal> none = Collections.emptyList();
+	for (Literal fact : kb.liveFacts(version))
+	    compileClause(fact, none);
+	for (Rule r : kb.liveRules(version))
+	    compileClause(r.consequent, r.antecedents);
+	for (Procedure proc : procedures)
+	    buildSwitch(proc);
+	this.version = version;
+    }
+
+    // procedure -- Return the index of the procedure for the given literal,
+    // creating an empty one if needed.  A procedure needed by a query is
+    // created in the query, rather than in the program.
+    int procedure(Literal lit, Scope s) {
+	long key = DiscriminationTree.predicateToken(lit);
+	Integer index = procedureIndex.get(key);
+	if (index != null)
+	    return (index);
+	List<Procedure> procs = (s.query == null) ? procedures
+	    : s.query.procedures;
+	Map<Long, Integer> indices = (s.query == null) ? procedureIndex
+	    : s.query.procedureIndex;
+	index = indices.get(key);
+	if (index == null) {
+	    Procedure proc = new Procedure();
+	    proc.pred = lit.pred;
+	    proc.arity = lit.args.size();
+	    proc.all = new int[0];
+	    proc.unkeyed = proc.all;
+	    proc.switchTable = new HashMap<Long, int[]>();
+	    index = procedures.size() + ((s.query == null) ? 0 : procs.size());
+	    procs.add(proc);
+	    indices.put(key, index);
+	}
+	return (index);
+    }
+
+    // procedure -- Return the procedure with the given index, which may
+    // belong to the given query.
+    Procedure procedure(int index, Query q) {
+	return ((index < procedures.size()) ? procedures.get(index)
+		: q.procedures.get(index - procedures.size()));
+    }
+
+    // functor -- Return the index of the given function symbol and arity.
+    // A function symbol needed by a query is added to the query, rather
+    // than to the program.
+    int functor(Function f, Scope s) {
+	long key = DiscriminationTree.token(f.func.id, f.args.size(),
+					    DiscriminationTree.FUNCTION);
+	Integer index = functorIndex.get(key);
+	if (index != null)
+	    return (index);
+	if (s.query == null) {
+	    index = functors.size();
+	    functors.add(f.func);
+	    functorArity.add(f.args.size());
+	    functorIndex.put(key, index);
+	} else {
+	    Query q = s.query;
+	    index = q.functorIndex.get(key);
+	    if (index == null) {
+		index = functors.size() + q.functors.size();
+		q.functors.add(f.func);
+		q.functorArity.add(f.args.size());
+		q.functorIndex.put(key, index);
+	    }
+	}
+	return (index);
+    }
+
+    // functorName -- Return the function symbol with the given index,
+    // which may belong to the given query.
+    FunctionName functorName(int index, Query q) {
+	return ((index < functors.size()) ? functors.get(index)
+		: q.functors.get(index - functors.size()));
+    }
+
+    // functorArity -- Return the arity of the function symbol with the
+    // given index, which may belong to the given query.
+    int functorArity(int index, Query q) {
+	return ((index < functorArity.size()) ? functorArity.get(index)
+		: q.functorArity.get(index - functorArity.size()));
+    }
+
+    // constant -- Return the symbol identifier of the given constant,
+    // remembering the constant so that answers can be read back.
+    int constant(Constant c, Scope s) {
+	Map<Integer, Constant> known = (s.query == null) ? constants
+	    : s.query.constants;
+	if (!constants.containsKey(c.id) && !known.containsKey(c.id))
+	    known.put(c.id, c);
+	return (c.id);
+    }
+
+    // constant -- Return the constant with the given symbol identifier,
+    // which may belong to the given query, or null if it is unknown.
+    Constant constant(int id, Query q) {
+	Constant c = constants.get(id);
+	return ((c != null) ? c : q.constants.get(id));
+    }
+
+    // switchKey -- Return the switch table key for a constant or for a
+    // functor index.
+    static long switchKey(int value, boolean isFunctor) {
+	return ((((long) value) << 1) | (isFunctor ? 1 : 0));
+    }
+
+    // termKey -- Return the switch table key for the given clause argument,
+    // or null if it is a variable.
+    Long termKey(Term t, Scope s) {
+	if (t.c != null)
+	    return (switchKey(constant(t.c, s), false));
+	if (t.f != null)
+	    return (switchKey(functor(t.f, s), true));
+	return (null);
+    }
+
+    // buildSwitch -- Collect the entry points of the clauses of the given
+    // procedure that might match each first argument key.
+    void buildSwitch(Procedure proc) {
+	int n = proc.entries.size();
+	proc.all = new int[n];
+	List<Integer> unkeyed = new ArrayList<Integer>();
+	Map<Long, List<Integer>> byKey = new LinkedHashMap<Long, List<Integer>>();
+	for (int i = 0; i < n; i++) {
+	    proc.all[i] = proc.entries.get(i);
+	    Long key = proc.keys.get(i);
+	    if (key == null) {
+		unkeyed.add(i);
+		for (List<Integer> clauses : byKey.values())
+		    clauses.add(i);
+	    } else {
+		List<Integer> clauses = byKey.get(key);
+		if (clauses == null) {
+		    // Earlier clauses with variable arguments come first ...
+		    clauses = new ArrayList<Integer>(unkeyed);
+		    byKey.put(key, clauses);
+		}
+		clauses.add(i);
+	    }
+	}
+	proc.unkeyed = entriesOf(proc, unkeyed);
+	proc.switchTable = new HashMap<Long, int[]>();
+	for (Map.Entry<Long, List<Integer>> e : byKey.entrySet())
+	    proc.switchTable.put(e.getKey(), entriesOf(proc, e.getValue()));
+    }
+
+    // entriesOf -- Return the entry points of the given clauses.
+    static int[] entriesOf(Procedure proc, List<Integer> clauses) {
+	int[] result = new int[clauses.size()];
+	for (int i = 0; i < result.length; i++)
+	    result[i] = proc.entries.get(clauses.get(i));
+	return (result);
+    }
+
+    // needRegisters -- Note that the clause or query being compiled uses
+    // the given number of registers.
+    void needRegisters(Scope s, int n) {
+	if (s.query != null) {
+	    if (n > s.query.registers)
+		s.query.registers = n;
+	} else if (n > registers) {
+	    registers = n;
+	}
+    }
+
+    // newRegister -- Allocate a fresh temporary register.
+    int newRegister(Scope s) {
+	int r = s.nextRegister++;
+	needRegisters(s, s.nextRegister);
+	return (r);
+    }
+
+    // register -- Return the variable operand referring to a register.
+    static int register(int r) {
+	return (-(r + 1));
+    }
+
+    // operand -- Return the operand for the given variable, allocating a
+    // permanent variable or a register on its first occurrence.
+    int operand(Variable v, Scope s) {
+	Integer op = s.varOperand.get(v.id);
+	if (op == null) {
+	    op = s.permanent ? s.varOperand.size() : register(newRegister(s));
+	    s.varOperand.put(v.id, op);
+	}
+	return (op);
+    }
+
+    // firstOccurrence -- Return true the first time the given variable is
+    // seen in the current clause.
+    static boolean firstOccurrence(Variable v, Scope s) {
+	return (s.seen.add(v.id));
+    }
+
+    // countVariables -- Assign a permanent variable to each variable of the
+    // given literals, in order of appearance, returning their number.
+    static int countVariables(Literal head, List<Literal> body,
+			      List<Variable> out, Scope s) {
+	List<Literal> lits = new ArrayList<Literal>();
+	if (head != null)
+	    lits.add(head);
+	lits.addAll(body);
+	for (Literal lit : lits)
+	    for (Term t : lit.args)
+		countVariables(t, out, s);
+	return (s.varOperand.size());
+    }
+
+    static void countVariables(Term t, List<Variable> out, Scope s) {
+	if (t.v != null) {
+	    if (!s.varOperand.containsKey(t.v.id)) {
+		s.varOperand.put(t.v.id, s.varOperand.size());
+		if (out != null)
+		    out.add(t.v);
+	    }
+	} else if (t.f != null) {
+	    for (Term arg : t.f.args)
+		countVariables(arg, out, s);
+	}
+    }
+
+    // compileClause -- Compile a single clause and add it to the procedure
+    // for its head.
+    void compileClause(Literal head, List<Literal> body) {
+	int arity = head.args.size();
+	Scope s = new Scope(!body.isEmpty(), arity, null);
+	Procedure proc = procedures.get(procedure(head, s));
+	needRegisters(s, arity + 1);
+	int entry;
+	if (s.permanent)
+	    entry = code.emit(ALLOCATE, countVariables(head, body, null, s), 0);
+	else
+	    entry = code.size;
+	for (int i = 0; i < arity; i++)
+	    compileGet(head.args.get(i), i, s);
+	compileBody(code, body, s);
+	proc.entries.add(entry);
+	proc.keys.add((arity == 0) ? null : termKey(head.args.get(0), s));
+    }
+
+    // compileQuery -- Compile the given conjunction of goals into a code
+    // segment ending in a HALT instruction.  The program itself is only
+    // read, so queries may be compiled by several threads at once.
+    public Query compileQuery(List<Literal> goals) {
+	Query q = new Query();
+	Scope s = new Scope(true, 0, q);
+	q.code.emit(ALLOCATE, countVariables(null, goals, q.variables, s), 0);
+	compileBody(q.code, goals, s);
+	q.code.emit(HALT, 0, 0);
+	return (q);
+    }
+
+    // compileBody -- Compile the calls to the given goals.  For a rule, the
+    // last call is made once its environment has been released.
+    void compileBody(Code out, List<Literal> body, Scope s) {
+	boolean query = (s.query != null);
+	if (body.isEmpty()) {
+	    if (!query)
+		out.emit(PROCEED, 0, 0);
+	    return;
+	}
+	for (int k = 0; k < body.size(); k++) {
+	    Literal goal = body.get(k);
+	    int arity = goal.args.size();
+	    needRegisters(s, arity + 1);
+	    s.nextRegister = arity;
+	    for (int i = 0; i < arity; i++)
+		compilePut(out, goal.args.get(i), i, s);
+	    int proc = procedure(goal, s);
+	    if ((k == body.size() - 1) && !query) {
+		out.emit(DEALLOCATE, 0, 0);
+		out.emit(EXECUTE, proc, 0);
+	    } else {
+		out.emit(CALL, proc, 0);
+	    }
+	}
+    }
+
+    // compileGet -- Compile the matching of a head argument against the
+    // given register.  Nested functions are matched after their parent,
+    // through temporary registers.
+    void compileGet(Term t, int reg, Scope s) {
+	if (t.c != null) {
+	    code.emit(GET_CON, constant(t.c, s), reg);
+	} else if (t.v != null) {
+	    code.emit(firstOccurrence(t.v, s) ? GET_VAR : GET_VAL,
+		      operand(t.v, s), reg);
+	} else {
+	    code.emit(GET_STR, functor(t.f, s), reg);
+	    List<Integer> nestedRegs = new ArrayList<Integer>();
+	    List<Term> nested = new ArrayList<Term>();
+	    for (Term arg : t.f.args) {
+		if (arg.c != null) {
+		    code.emit(UNIFY_CON, constant(arg.c, s), 0);
+		} else if (arg.v != null) {
+		    code.emit(firstOccurrence(arg.v, s) ? UNIFY_VAR : UNIFY_VAL,
+			      operand(arg.v, s), 0);
+		} else {
+		    int r = newRegister(s);
+		    code.emit(UNIFY_VAR, register(r), 0);
+		    nestedRegs.add(r);
+		    nested.add(arg);
+		}
+	    }
+	    for (int i = 0; i < nested.size(); i++)
+		compileGet(nested.get(i), nestedRegs.get(i), s);
+	}
+    }
+
+    // compilePut -- Compile the construction of a goal argument in the
+    // given register.
+    void compilePut(Code out, Term t, int reg, Scope s) {
+	if (t.c != null)
+	    out.emit(PUT_CON, constant(t.c, s), reg);
+	else if (t.v != null)
+	    out.emit(firstOccurrence(t.v, s) ? PUT_VAR : PUT_VAL,
+		     operand(t.v, s), reg);
+	else
+	    compileStructure(out, t.f, reg, s);
+    }
+
+    // compileStructure -- Compile the construction of the given function
+    // in the given register.  Nested functions are built first, since the
+    // arguments of a structure must be contiguous on the heap.
+    void compileStructure(Code out, Function f, int reg, Scope s) {
+	int[] nestedRegs = new int[f.args.size()];
+	for (int i = 0; i < f.args.size(); i++) {
+	    Term arg = f.args.get(i);
+	    if (arg.f != null) {
+		nestedRegs[i] = newRegister(s);
+		compileStructure(out, arg.f, nestedRegs[i], s);
+	    }
+	}
+	out.emit(PUT_STR, functor(f, s), reg);
+	for (int i = 0; i < f.args.size(); i++) {
+	    Term arg = f.args.get(i);
+	    if (arg.c != null)
+		out.emit(SET_CON, constant(arg.c, s), 0);
+	    else if (arg.v != null)
+		out.emit(firstOccurrence(arg.v, s) ? SET_VAR : SET_VAL,
+			 operand(arg.v, s), 0);
+	    else
+		out.emit(SET_VAL, register(nestedRegs[i]), 0);
+	}
+    }
+
+
+}
@@ -9,7 +9,10 @@
 // all static functions, no objects of this class need to be allocated in
 // order to use them.  In general, both heuristic evaluation function
 // values and expected utility values should be between plus and minus
-// "State.win_payoff".
+// "State.win_payoff".  The look-ahead search works on PackedState
+// encodings of game states, rather than on State objects, whenever it can,
+// so that it allocates no objects, and it records the values of the
+// positions that it searches in a TranspositionTable.
 //
 // Zombie Dice is a trademark of Steve Jackson Games.  For more information
 // about this game, see "zombiedice.sjgames.com".
@@ -24,28 +27,59 @@ public class Eval {
 	// the given heuristic evaluation function ...
 	static public int depth_limit = 3; 
 
+	// Values of positions already searched, or null to search every
+	// position afresh ...
+	static public TranspositionTable table = new TranspositionTable();
+
 	// value -- This public function returns the payoff value of
 	// terminal states or the expected utility value of
 	// non-terminal states, backing up heuristic evaluation
 	// values once the given depth has reached the depth limit.
 	static public double value(State s, int depth) {
+		double val = 0.0; // return value
+		long key; // packed encoding of the state
+
 		// Stop searching once either a terminal state is reached or the
 		// depth limit is reached ...
 		if ((s.terminal()) || (depth >= depth_limit)) {
 			return (s.payoff());
 		}
+		// Search the packed encoding of the state, which allocates no
+		// objects, unless the encoding could overflow during the
+		// search ...
+		key = PackedState.pack(s);
+		if ((key != PackedState.none) && (PackedState.roomFor(key, (depth_limit - depth + 1)))) {
+			return (Eval.value(key, depth));
+		}
+		// Check whether this position has already been searched to
+		// the same remaining depth ...
+		if (table != null) {
+			val = table.lookup(key, (depth_limit - depth));
+			if (!Double.isNaN(val)) {
+				return (val);
+			}
+		}
 		// Keep searching ...
 		switch (s.current_choice) {
 		case roll:
-			return (Eval.value_roll(s, depth));
+			val = Eval.value_roll(s, depth);
+			break;
 		case stop:
-			return (Eval.value_stop(s, depth));
+			val = Eval.value_stop(s, depth);
+			break;
 		case undecided:
-			return (Eval.value_choose(s, depth));
+			val = Eval.value_choose(s, depth);
+			break;
 		default:
 			// We should never get here ...
-			return (0.0);
+			val = 0.0;
+			break;
 		}
+		// Remember the value of this position ...
+		if (table != null) {
+			table.store(key, (depth_limit - depth), val);
+		}
+		return (val);
 	}
 
 	// value -- This public function returns the payoff value of
@@ -139,9 +173,9 @@ public class Eval {
 					if(up2 != DieFace.invalid) {
 						for(DieFace up3 : DieFace.values()) {
 							if(up3 != DieFace.invalid) {
-								s.roll(up1, up2, up3);
+								State rolled_s = s.roll(up1, up2, up3);
 								probability = s.rollProb(up1, up2, up3);
-								utility_values = value_rolled_hand(s, depth);
+								utility_values = value_rolled_hand(rolled_s, depth);
 								val += probability *  utility_values; 
 							}
 						}
@@ -265,6 +299,175 @@ public class Eval {
 		}
 	}
 
+	// value -- Return the payoff value or the expected utility value of
+	// the state with the given PackedState encoding, as for a
+	// State object. The search below this point works on
+	// encodings, making and unmaking moves in place of copying
+	// states.
+	static double value(long p, int depth) {
+		double val = 0.0; // return value
+
+		// Stop searching once either a terminal state is reached or the
+		// depth limit is reached ...
+		if ((PackedState.terminal(p)) || (depth >= depth_limit)) {
+			return (Eval.payoff(p));
+		}
+		// Check whether this position has already been searched to
+		// the same remaining depth ...
+		if (table != null) {
+			val = table.lookup(p, (depth_limit - depth));
+			if (!Double.isNaN(val)) {
+				return (val);
+			}
+		}
+		// Keep searching ...
+		switch (PackedState.choice(p)) {
+		case roll:
+			val = Eval.value_roll(p, depth);
+			break;
+		case stop:
+			val = Eval.value_stop(p, depth);
+			break;
+		case undecided:
+			val = Eval.value_choose(p, depth);
+			break;
+		default:
+			// We should never get here ...
+			val = 0.0;
+			break;
+		}
+		// Remember the value of this position ...
+		if (table != null) {
+			table.store(p, (depth_limit - depth), val);
+		}
+		return (val);
+	}
+
+	// value_rolled_hand -- Compute the expected utility value of the
+	// encoded state, given that the rolled brains
+	// and blasts have just been collected from the
+	// hand.
+	static double value_rolled_hand(long p, int depth) {
+		// Check to see if the current player has been shotgunned ...
+		if (PackedState.blastsCollected(p) >= State.num_terminal_blasts) {
+			// This turn is over, so force the choice to stop ...
+			return (Eval.value(PackedState.withChoice(p, Choice.stop), depth));
+		} else {
+			// The roll is done, but the turn is not ...
+			return (Eval.value(PackedState.withChoice(p, Choice.undecided), (depth + 1)));
+		}
+	}
+
+	// value_roll_hand -- Compute the expected utility value of the
+	// encoded state, given that the hand is full. Note
+	// that this function assumes that there are three
+	// dice in a hand (i.e., that the value of
+	// "hand_size" is three).
+	static double value_roll_hand(long p, int depth) {
+		double val = 0.0; // return value
+		double probability;
+		DieColor c1 = PackedState.handDie(p, 0);
+		DieColor c2 = PackedState.handDie(p, 1);
+		DieColor c3 = PackedState.handDie(p, 2);
+
+		// Consider every outcome of rolling the three dice ...
+		for (DieFace up1 : PackedState.faces) {
+			p = PackedState.collect(p, c1, up1);
+			for (DieFace up2 : PackedState.faces) {
+				p = PackedState.collect(p, c2, up2);
+				for (DieFace up3 : PackedState.faces) {
+					p = PackedState.collect(p, c3, up3);
+					probability = PackedState.faceProb(c1, up1) * PackedState.faceProb(c2, up2)
+							* PackedState.faceProb(c3, up3);
+					val = val + (probability * Eval.value_rolled_hand(p, depth));
+					p = PackedState.uncollect(p, c3, up3);
+				}
+				p = PackedState.uncollect(p, c2, up2);
+			}
+			p = PackedState.uncollect(p, c1, up1);
+		}
+		return (val);
+	}
+
+	// value_roll -- Compute the expected utility value of the encoded
+	// state, given that the current player will be
+	// immediately drawing dice and rolling.
+	static double value_roll(long p, int depth) {
+		double val = 0.0; // return value
+
+		if (PackedState.handSize(p) == State.hand_size) {
+			// Consider all possible results of rolling the dice ...
+			val = Eval.value_roll_hand(p, depth);
+		} else {
+			if (PackedState.cupSize(p) <= 0) {
+				// Reuse collected brain dice ...
+				val = Eval.value_roll(PackedState.reuseBrains(p), depth);
+			} else {
+				// Iterate over all possible colors for the next die ...
+				for (DieColor c : PackedState.colors) {
+					if (PackedState.cup(p, c) > 0) {
+						double this_draw_prob = PackedState.drawProb(p, c);
+						p = PackedState.draw(p, c);
+						val = val + (Eval.value_roll(p, depth) * this_draw_prob);
+						p = PackedState.replace(p, c);
+					}
+				}
+			}
+		}
+		return (val);
+	}
+
+	// value_stop -- Compute the expected utility value of the encoded
+	// state, given that the current player will not continue
+	// to roll at this point.
+	static double value_stop(long p, int depth) {
+		// Update scores ...
+		p = PackedState.endTurn(p);
+		// Check for end of game ...
+		if (PackedState.terminal(p)) {
+			return (Eval.payoff(p));
+		} else {
+			// Move to next player ...
+			return (Eval.value(PackedState.nextPlayer(p), (depth + 1)));
+		}
+	}
+
+	// value_choose -- Compute the expected utility value of rolling and
+	// of stopping in the encoded state, returning the
+	// better of the two for the current player.
+	static double value_choose(long p, int depth) {
+		double eu_roll; // expected utility value of rolling
+		double eu_stop; // expected utility value of stoping
+
+		eu_roll = Eval.value(PackedState.withChoice(p, Choice.roll), depth);
+		// Always roll if no brains have been collected ...
+		if (PackedState.brainsCollected(p) == 0) {
+			return (eu_roll);
+		}
+		eu_stop = Eval.value(PackedState.withChoice(p, Choice.stop), depth);
+		// Which one is better depends on whose turn it is ...
+		if (PackedState.computerTurn(p)) {
+			return (Math.max(eu_roll, eu_stop));
+		} else {
+			return (Math.min(eu_roll, eu_stop));
+		}
+	}
+
+	// payoff -- Return the utility of the encoded state, if it is a
+	// terminal state, or the value of the heuristic evaluation
+	// function if it is not, as in "State.payoff".
+	static double payoff(long p) {
+		if (PackedState.terminal(p)) {
+			if (PackedState.compBrainsEaten(p) > PackedState.userBrainsEaten(p)) {
+				return (State.win_payoff);
+			} else {
+				return (-State.win_payoff);
+			}
+		} else {
+			return (Eval.heuristic(p));
+		}
+	}
+
 	// heuristic -- Compute a heuristic evaluation function value for the
 	// specified State object. This function must be
 	// calculated quickly, with no look-ahead search, and it
@@ -330,4 +533,36 @@ public class Eval {
 		return (value);
 	}
 
+	// heuristic -- Compute the same heuristic evaluation function value
+	// for the state with the given PackedState encoding.
+	static double heuristic(long p) {
+		double value = 0.0;
+		double safety = 0;
+
+		if (PackedState.blastsCollected(p) == 0 || PackedState.brainsCollected(p) == 0) {
+			return (-State.win_payoff);
+		}
+		if (PackedState.compBrainsEaten(p) + PackedState.blastsCollected(p) >= State.brains_to_win) {
+			return (State.win_payoff);
+		}
+		if (PackedState.brainsCollected(p) > 0) {
+			return (+State.win_payoff);
+		}
+
+		for (DieColor c : PackedState.colors) {
+			double p_feet = PackedState.faceProb(c, DieFace.feet);
+			if (c == DieColor.red) {
+				safety = -p_feet;
+			} else if (c == DieColor.yellow) {
+				safety = p_feet / 2;
+			} else {
+				safety = p_feet;
+			}
+			for (int i = 0; i < PackedState.hand(p, c); i++) {
+				value += (PackedState.faceProb(c, DieFace.brain) + safety) - PackedState.faceProb(c, DieFace.blast);
+			}
+		}
+		return (value);
+	}
+
 }
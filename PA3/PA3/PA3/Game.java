@@ -33,7 +33,10 @@ public class Game {
 			if (status.brains_collected == 0) {
 				return (Choice.roll);
 			}
-			// Make a copy of the current state ...
+			// Make a copy of the current state. Note that the values
+			// held in "Eval.table" remain correct from one move to the
+			// next, so positions searched for earlier moves are not
+			// searched again ...
 			State new_status = new State(status);
 			// Calculate the expected utility value for rolling ...
 			new_status.current_choice = Choice.roll;
@@ -0,0 +1,383 @@
+//
+// PackedState
+//
+// This class implements a compact encoding of a Zombie Dice game state in
+// a single "long", along with the moves of the game as operations on this
+// encoding, so that game states can be searched without allocating State,
+// Cup, or Die objects.  Dice are only told apart by color, and the dice in
+// the hand are assumed to show feet, which is the case whenever the value
+// of a state is requested, so a state is described by the scores, the turn
+// status, the collected dice counts, and the number of dice of each color
+// among the collected brains, the collected blasts, the hand, and the cup.
+// Each of these is held in its own field of bits.  Moving a die from one
+// place to another is done by adding and subtracting the units of the
+// corresponding fields, and is undone by the reverse operation.  Since an
+// encoded state is a value, a search may also simply keep the encoding of
+// a state in order to return to it.  The encoding also serves as the key
+// of a state in a TranspositionTable.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.util.*;
+
+
+public class PackedState {
+
+	// Encoding of a state that could not be packed ...
+	static final long none = -1L;
+
+	// Bit positions of the fields ...
+	static final int cup_shift = 0;
+	static final int hand_shift = 8;
+	static final int brains_shift = 16;
+	static final int blasts_shift = 24;
+	static final int blasts_collected_shift = 32;
+	static final int brains_collected_shift = 35;
+	static final int comp_brains_eaten_shift = 42;
+	static final int user_brains_eaten_shift = 50;
+	static final int player_shift = 58;
+	static final int choice_shift = 59;
+
+	// Largest values held by the fields ...
+	static final int max_blasts_collected = 7;
+	static final int max_brains_collected = 127;
+	static final int max_brains_eaten = 255;
+
+	// Positions of the colors within the eight bits of a set of dice ...
+	static final int green_shift = 0;
+	static final int yellow_shift = 3;
+	static final int red_shift = 6;
+
+	// Colors and faces, in order, without the "invalid" values ...
+	static final DieColor[] colors = { DieColor.green, DieColor.yellow, DieColor.red };
+	static final DieFace[] faces = { DieFace.brain, DieFace.feet, DieFace.blast };
+
+	// colorShift -- Return the position of the count of the given color
+	// within the eight bits of a set of dice.
+	static int colorShift(DieColor col) {
+		switch (col) {
+		case green:
+			return (green_shift);
+		case yellow:
+			return (yellow_shift);
+		default:
+			return (red_shift);
+		}
+	}
+
+	// colorMask -- Return the largest count of the given color that fits
+	// in a set of dice.
+	static int colorMask(DieColor col) {
+		if (col == DieColor.red) {
+			return (3);
+		} else {
+			return (7);
+		}
+	}
+
+	// count -- Return the number of dice of the given color in the set of
+	// dice at the given position.
+	static int count(long p, int set_shift, DieColor col) {
+		return ((int) (p >>> (set_shift + colorShift(col))) & colorMask(col));
+	}
+
+	// total -- Return the number of dice in the set of dice at the given
+	// position.
+	static int total(long p, int set_shift) {
+		int bits = (int) (p >>> set_shift);
+		return ((bits & 7) + ((bits >>> 3) & 7) + ((bits >>> 6) & 3));
+	}
+
+	// unit -- Return the amount added to an encoding by one more die of
+	// the given color in the set of dice at the given position.
+	static long unit(int set_shift, DieColor col) {
+		return (1L << (set_shift + colorShift(col)));
+	}
+
+	// field -- Return the value of the field at the given position, with
+	// the given number of bits.
+	static int field(long p, int shift, int bits) {
+		return ((int) (p >>> shift) & ((1 << bits) - 1));
+	}
+
+	// Accessors ...
+	static int cup(long p, DieColor col) {
+		return (count(p, cup_shift, col));
+	}
+
+	static int hand(long p, DieColor col) {
+		return (count(p, hand_shift, col));
+	}
+
+	static int cupSize(long p) {
+		return (total(p, cup_shift));
+	}
+
+	static int handSize(long p) {
+		return (total(p, hand_shift));
+	}
+
+	static int blastsCollected(long p) {
+		return (field(p, blasts_collected_shift, 3));
+	}
+
+	static int brainsCollected(long p) {
+		return (field(p, brains_collected_shift, 7));
+	}
+
+	static int compBrainsEaten(long p) {
+		return (field(p, comp_brains_eaten_shift, 8));
+	}
+
+	static int userBrainsEaten(long p) {
+		return (field(p, user_brains_eaten_shift, 8));
+	}
+
+	static boolean computerTurn(long p) {
+		return (field(p, player_shift, 1) == 1);
+	}
+
+	static Choice choice(long p) {
+		switch (field(p, choice_shift, 2)) {
+		case 1:
+			return (Choice.undecided);
+		case 2:
+			return (Choice.roll);
+		case 3:
+			return (Choice.stop);
+		default:
+			return (Choice.invalid);
+		}
+	}
+
+	// packSet -- Return the given numbers of green, yellow, and red dice
+	// packed into eight bits, or -1 if they do not fit.
+	static long packSet(int green, int yellow, int red) {
+		if ((green > 7) || (yellow > 7) || (red > 3)) {
+			return (-1);
+		}
+		return (((long) green << green_shift) | ((long) yellow << yellow_shift) | ((long) red << red_shift));
+	}
+
+	// packSet -- Return the numbers of green, yellow, and red dice in the
+	// given list packed into eight bits, or -1 if they do not
+	// fit.
+	static long packSet(List<Die> dice) {
+		int green = 0;
+		int yellow = 0;
+		int red = 0;
+		for (Die d : dice) {
+			switch (d.getColor()) {
+			case green:
+				green = green + 1;
+				break;
+			case yellow:
+				yellow = yellow + 1;
+				break;
+			case red:
+				red = red + 1;
+				break;
+			default:
+				return (-1);
+			}
+		}
+		return (packSet(green, yellow, red));
+	}
+
+	// pack -- Return the encoding of the given State, or "none" if some
+	// count is too large to be encoded.
+	public static long pack(State s) {
+		long cup = packSet(s.cup.num_green, s.cup.num_yellow, s.cup.num_red);
+		long hand = packSet(s.hand);
+		long brains = packSet(s.brains);
+		long blasts = packSet(s.blasts);
+		if ((cup < 0) || (hand < 0) || (brains < 0) || (blasts < 0)) {
+			return (none);
+		}
+		if ((s.blasts_collected < 0) || (s.blasts_collected > max_blasts_collected) || (s.brains_collected < 0)
+				|| (s.brains_collected > max_brains_collected) || (s.comp_brains_eaten < 0)
+				|| (s.comp_brains_eaten > max_brains_eaten) || (s.user_brains_eaten < 0)
+				|| (s.user_brains_eaten > max_brains_eaten)) {
+			return (none);
+		}
+		long p = (cup << cup_shift) | (hand << hand_shift) | (brains << brains_shift) | (blasts << blasts_shift);
+		p = p | ((long) s.blasts_collected << blasts_collected_shift);
+		p = p | ((long) s.brains_collected << brains_collected_shift);
+		p = p | ((long) s.comp_brains_eaten << comp_brains_eaten_shift);
+		p = p | ((long) s.user_brains_eaten << user_brains_eaten_shift);
+		if (s.current_player == Turn.computer) {
+			p = p | (1L << player_shift);
+		}
+		return (withChoice(p, s.current_choice));
+	}
+
+	// roomFor -- Return true iff the given number of further rolls, each
+	// adding up to a full hand of brains, cannot overflow the
+	// brain counts of the given encoding.
+	static boolean roomFor(long p, int rolls) {
+		int gain = brainsCollected(p) + (rolls * State.hand_size);
+		return ((gain <= max_brains_collected)
+				&& (Math.max(compBrainsEaten(p), userBrainsEaten(p)) + gain <= max_brains_eaten));
+	}
+
+	// withChoice -- Return the given encoding with the current choice set
+	// to the given value.
+	static long withChoice(long p, Choice act) {
+		long code = 0;
+		switch (act) {
+		case undecided:
+			code = 1;
+			break;
+		case roll:
+			code = 2;
+			break;
+		case stop:
+			code = 3;
+			break;
+		default:
+			code = 0;
+			break;
+		}
+		return ((p & ~(3L << choice_shift)) | (code << choice_shift));
+	}
+
+	// draw -- Return the given encoding with a die of the given color
+	// moved from the cup into the hand. The cup must hold such a
+	// die.
+	static long draw(long p, DieColor col) {
+		return (p - unit(cup_shift, col) + unit(hand_shift, col));
+	}
+
+	// replace -- Return the given encoding with a die of the given color
+	// moved from the hand into the cup, undoing "draw". The
+	// hand must hold such a die.
+	static long replace(long p, DieColor col) {
+		return (p - unit(hand_shift, col) + unit(cup_shift, col));
+	}
+
+	// collect -- Return the given encoding with a die of the given color
+	// in the hand, rolled to the given face, collected as a
+	// brain or a blast. Dice showing feet stay in the hand.
+	static long collect(long p, DieColor col, DieFace up) {
+		switch (up) {
+		case brain:
+			return (p - unit(hand_shift, col) + unit(brains_shift, col) + (1L << brains_collected_shift));
+		case blast:
+			return (p - unit(hand_shift, col) + unit(blasts_shift, col) + (1L << blasts_collected_shift));
+		default:
+			return (p);
+		}
+	}
+
+	// uncollect -- Return the given encoding with a die of the given
+	// color, collected as the given face, returned to the
+	// hand, undoing "collect".
+	static long uncollect(long p, DieColor col, DieFace up) {
+		switch (up) {
+		case brain:
+			return (p + unit(hand_shift, col) - unit(brains_shift, col) - (1L << brains_collected_shift));
+		case blast:
+			return (p + unit(hand_shift, col) - unit(blasts_shift, col) - (1L << blasts_collected_shift));
+		default:
+			return (p);
+		}
+	}
+
+	// reuseBrains -- Return the given encoding with the collected brain
+	// dice replaced into the cup, as in "State.reuseBrains".
+	// The cup must be empty.
+	static long reuseBrains(long p) {
+		long brains = (p >>> brains_shift) & 0xFFL;
+		return ((p & ~(0xFFL << brains_shift)) + (brains << cup_shift));
+	}
+
+	// endTurn -- Return the given encoding with the brains eaten during
+	// this turn recorded, the dice returned to the cup, and the
+	// choice set to stop, as in "State.endTurn". The counts of
+	// dice of each color in the cup must not overflow.
+	static long endTurn(long p) {
+		if (blastsCollected(p) < State.num_terminal_blasts) {
+			if (computerTurn(p)) {
+				p = p + ((long) brainsCollected(p) << comp_brains_eaten_shift);
+			} else {
+				p = p + ((long) brainsCollected(p) << user_brains_eaten_shift);
+			}
+		}
+		long returned = ((p >>> brains_shift) & 0xFFL) + ((p >>> blasts_shift) & 0xFFL) + ((p >>> hand_shift) & 0xFFL);
+		p = p & ~((0xFFL << hand_shift) | (0xFFL << brains_shift) | (0xFFL << blasts_shift)
+				| (7L << blasts_collected_shift) | (127L << brains_collected_shift));
+		p = p + (returned << cup_shift);
+		return (withChoice(p, Choice.stop));
+	}
+
+	// nextPlayer -- Return the given encoding with the turn handed to the
+	// other player, as in "State.nextPlayer".
+	static long nextPlayer(long p) {
+		return (withChoice(p ^ (1L << player_shift), Choice.undecided));
+	}
+
+	// terminal -- Return true iff the given encoding is of a terminal
+	// state, as in "State.terminal".
+	static boolean terminal(long p) {
+		int comp = compBrainsEaten(p);
+		int user = userBrainsEaten(p);
+		return ((!computerTurn(p)) && (choice(p) == Choice.stop) && (comp != user)
+				&& ((comp >= State.brains_to_win) || (user >= State.brains_to_win)));
+	}
+
+	// drawProb -- Return the probability of drawing a die of the given
+	// color from the cup, as in "State.drawProb".
+	static double drawProb(long p, DieColor col) {
+		return (((double) cup(p, col)) / ((double) cupSize(p)));
+	}
+
+	// faceProb -- Return the probability of rolling the given face on a
+	// die of the given color, as in "Die.prob".
+	static double faceProb(DieColor col, DieFace up) {
+		switch (col) {
+		case green:
+			switch (up) {
+			case brain:
+				return (Die.green_brains / Die.die_sides);
+			case feet:
+				return (Die.green_feets / Die.die_sides);
+			default:
+				return (Die.green_blasts / Die.die_sides);
+			}
+		case yellow:
+			switch (up) {
+			case brain:
+				return (Die.yellow_brains / Die.die_sides);
+			case feet:
+				return (Die.yellow_feets / Die.die_sides);
+			default:
+				return (Die.yellow_blasts / Die.die_sides);
+			}
+		default:
+			switch (up) {
+			case brain:
+				return (Die.red_brains / Die.die_sides);
+			case feet:
+				return (Die.red_feets / Die.die_sides);
+			default:
+				return (Die.red_blasts / Die.die_sides);
+			}
+		}
+	}
+
+	// handDie -- Return the color of the die at the given position in the
+	// hand, taking the dice in order of color.
+	static DieColor handDie(long p, int i) {
+		for (DieColor c : colors) {
+			i = i - hand(p, c);
+			if (i < 0) {
+				return (c);
+			}
+		}
+		return (DieColor.invalid);
+	}
+
+}
@@ -2,7 +2,8 @@
 // Pthree
 //
 // This class provides a "main" method that acts as a driver program for
-// a Zombie Dice game player.
+// a Zombie Dice game player.  The depth limit of the computer player's
+// search may be given as the first command line argument.
 // 
 // Zombie Dice is a trademark of Steve Jackson Games.  For more information
 // about this game, see "zombiedice.sjgames.com".
@@ -14,6 +15,9 @@
 public class Pthree {
 
 	public static void main(String[] args) {
+		if (args.length > 0) {
+			Eval.depth_limit = Integer.parseInt(args[0]);
+		}
 		Game session = new Game();
 		session.play();
 		session = null;
@@ -0,0 +1,105 @@
+//
+// TranspositionTable
+//
+// This class implements a transposition table for the expected utility
+// values computed by "Eval.value".  The same position is often reached
+// along different paths through the game tree, such as when dice of the
+// same colors are drawn in different orders, and its value need only be
+// computed once.  Positions are identified by their PackedState encoding,
+// a single "long" holding the scores, the turn status, the collected dice
+// counts, and the number of dice of each color among the collected brains,
+// the collected blasts, the hand, and the cup.  A value depends on how much
+// deeper the search may go before the heuristic evaluation function is
+// used, so each value is stored along with this remaining depth.  The
+// table has a fixed number of slots, and a new value replaces whatever
+// was held in its slot.
+//
+// Zombie Dice is a trademark of Steve Jackson Games.  For more information
+// about this game, see "zombiedice.sjgames.com".
+//
+
+
+import java.util.*;
+
+
+public class TranspositionTable {
+
+	// Table parameters ...
+	static int default_slots = 1 << 18;
+	static long no_key = PackedState.none;
+
+	// Contents of the table ...
+	long[] keys;
+	int[] remaining_depths;
+	double[] values;
+	int mask;
+
+	// Usage counts ...
+	public long hits = 0;
+	public long misses = 0;
+
+	// Default constructor ...
+	public TranspositionTable() {
+		this(default_slots);
+	}
+
+	// Constructor with the number of slots specified, which is rounded
+	// up to a power of two ...
+	public TranspositionTable(int slots) {
+		int size = 1;
+		while (size < slots) {
+			size = size * 2;
+		}
+		this.keys = new long[size];
+		this.remaining_depths = new int[size];
+		this.values = new double[size];
+		this.mask = size - 1;
+		clear();
+	}
+
+	// clear -- Remove all values from the table.
+	public void clear() {
+		Arrays.fill(keys, no_key);
+		hits = 0;
+		misses = 0;
+	}
+
+	// encode -- Return the compact encoding of the given State, or
+	// "no_key" if some count is too large to be encoded.
+	public static long encode(State s) {
+		return (PackedState.pack(s));
+	}
+
+	// slot -- Return the slot for the given key and remaining depth.
+	int slot(long key, int remaining_depth) {
+		long h = (key + remaining_depth) * 0x9E3779B97F4A7C15L;
+		return ((int) (h >>> 40) & mask);
+	}
+
+	// lookup -- Return the value stored for the position with the given
+	// encoding, searched to the given remaining depth, or NaN
+	// if there is none.
+	public double lookup(long key, int remaining_depth) {
+		if (key != no_key) {
+			int i = slot(key, remaining_depth);
+			if ((keys[i] == key) && (remaining_depths[i] == remaining_depth)) {
+				hits = hits + 1;
+				return (values[i]);
+			}
+		}
+		misses = misses + 1;
+		return (Double.NaN);
+	}
+
+	// store -- Record the value of the position with the given encoding,
+	// searched to the given remaining depth.
+	public void store(long key, int remaining_depth, double val) {
+		if (key != no_key) {
+			int i = slot(key, remaining_depth);
+			keys[i] = key;
+			remaining_depths[i] = remaining_depth;
+			values[i] = val;
+		}
+	}
+
+}